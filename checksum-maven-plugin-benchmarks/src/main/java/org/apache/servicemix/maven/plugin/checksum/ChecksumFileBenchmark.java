@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading and storing checksum files, and looking up artifacts
+ * in them, for checksum files of various sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumFileBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int entries;
+
+    private ChecksumValidatorMojo mojo;
+    private File checksumFile;
+    private File indexFile;
+    private File storeFile;
+    private Map checksums;
+    private ChecksumIndex index;
+
+    // a random sample of the artifacts, looked up round robin
+    private Artifact[] artifacts;
+    private String[] keys;
+    private Digest[] digests;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        mojo = Fixtures.createMojo("SHA-1", FileDigester.AUTO);
+        checksumFile = Fixtures.createChecksumFile(mojo, entries);
+        checksums = mojo.loadChecksums(checksumFile);
+        indexFile = new File(checksumFile.getPath() + ".idx");
+        index = ChecksumIndex.create(indexFile, checksums);
+        storeFile = File.createTempFile("checksum-benchmark-", ".txt");
+
+        Random random = new Random(42);
+        artifacts = new Artifact[LOOKUPS];
+        keys = new String[LOOKUPS];
+        digests = new Digest[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int entry = random.nextInt(entries);
+            artifacts[i] = Fixtures.artifact(entry);
+            keys[i] = mojo.key(artifacts[i]);
+            digests[i] = Fixtures.digest(entry);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        index.close();
+        checksumFile.delete();
+        indexFile.delete();
+        storeFile.delete();
+    }
+
+    @Benchmark
+    public Map load() throws Exception {
+        return mojo.loadChecksums(checksumFile);
+    }
+
+    @Benchmark
+    public void store() throws Exception {
+        mojo.storeChecksums(storeFile, checksums);
+    }
+
+    @Benchmark
+    public void openIndex() throws Exception {
+        ChecksumIndex.open(indexFile).close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean validateArtifact() throws Exception {
+        int i = next++ & (LOOKUPS - 1);
+        return mojo.validateArtifact(checksums, checksumFile, artifacts[i], digests[i]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean validateArtifactInIndex() throws Exception {
+        int i = next++ & (LOOKUPS - 1);
+        return mojo.validateArtifact(index, indexFile, artifacts[i], digests[i]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object lookupInIndex() {
+        return index.get(keys[next++ & (LOOKUPS - 1)]);
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * Generates the synthetic artifacts and checksum files used by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Parses sizes such as <code>1KB</code>, <code>64MB</code> or <code>1024</code>.
+     */
+    static long parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        if (s.endsWith("KB")) {
+            return Long.parseLong(s.substring(0, s.length() - 2)) * 1024;
+        }
+        if (s.endsWith("MB")) {
+            return Long.parseLong(s.substring(0, s.length() - 2)) * 1024 * 1024;
+        }
+        return Long.parseLong(s);
+    }
+
+    /**
+     * Writes a file of random content, so that neither the file system
+     * nor the digest can take shortcuts.
+     */
+    static File createArtifact(String size) throws IOException {
+        File file = File.createTempFile("checksum-benchmark-", ".jar");
+        file.deleteOnExit();
+        long remaining = parseSize(size);
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            while (remaining > 0) {
+                int length = (int) Math.min(block.length, remaining);
+                random.nextBytes(block);
+                os.write(block, 0, length);
+                remaining -= length;
+            }
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    static String groupId(int i) {
+        return "org.example.group" + (i % 100);
+    }
+
+    static String artifactId(int i) {
+        return "artifact-" + i;
+    }
+
+    static String version(int i) {
+        return "1." + (i % 10);
+    }
+
+    static Artifact artifact(int i) {
+        return new DefaultArtifact(groupId(i), artifactId(i), VersionRange.createFromVersion(version(i)),
+                                   null, "jar", null, new DefaultArtifactHandler("jar"));
+    }
+
+    /**
+     * @return the checksum recorded for the i-th entry of the checksum files
+     */
+    static Digest digest(int i) {
+        byte[] bytes = new byte[20];
+        new Random(i).nextBytes(bytes);
+        return new Digest(bytes);
+    }
+
+    /**
+     * @return checksums of the given number of artifacts, one every ten of them with two checksums
+     */
+    static Map createChecksums(ChecksumValidatorMojo mojo, int entries) {
+        Map rc = new LinkedHashMap();
+        for (int i = 0; i < entries; i++) {
+            Checksums checksums = new Checksums();
+            checksums.add(digest(i));
+            if (i % 10 == 0) {
+                checksums.add(digest(-i - 1));
+            }
+            rc.put(mojo.key(artifact(i)), checksums);
+        }
+        return rc;
+    }
+
+    static File createChecksumFile(ChecksumValidatorMojo mojo, int entries) throws Exception {
+        File file = File.createTempFile("checksum-benchmark-", ".txt");
+        file.deleteOnExit();
+        file.delete();
+        mojo.storeChecksums(file, createChecksums(mojo, entries));
+        return file;
+    }
+
+    /**
+     * Creates a mojo configured the way Maven would, without caches or registries.
+     */
+    static ChecksumValidatorMojo createMojo(String algorithm, String digestMode) throws Exception {
+        ChecksumValidatorMojo mojo = new ChecksumValidatorMojo();
+        set(mojo, "checksumAlgorithm", algorithm);
+        set(mojo, "digestMode", digestMode);
+        set(mojo, "mappedDigestThreshold", new Long(16 * 1024 * 1024));
+        return mojo;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ChecksumValidatorMojo#checksum(File)} on artifacts of
+ * various sizes, for every digest mode.  Divide the size by the reported
+ * time to get the hashing throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashingBenchmark {
+
+    @Param({"1KB", "64KB", "1MB", "16MB", "500MB"})
+    public String size;
+
+    @Param({"SHA-1"})
+    public String algorithm;
+
+    @Param({"stream", "channel", "mapped"})
+    public String digestMode;
+
+    private File artifact;
+    private ChecksumValidatorMojo mojo;
+
+    @Setup
+    public void setUp() throws Exception {
+        artifact = Fixtures.createArtifact(size);
+        mojo = Fixtures.createMojo(algorithm, digestMode);
+    }
+
+    @TearDown
+    public void tearDown() {
+        artifact.delete();
+    }
+
+    @Benchmark
+    public Digest[] checksum() throws Exception {
+        return mojo.checksum(artifact);
+    }
+
+}
@@ -0,0 +1,520 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An indexed, binary companion to the checksums.txt file.
+ *
+ * The file starts with the entries sorted by key, preceded by a table
+ * of their offsets, so that an entry can be looked up with a binary
+ * search without reading the whole file.  Entries added afterwards are
+ * appended to a log at the end of the file; the log is folded back into
+ * the sorted section once it grows too large.
+ *
+ * Checksums are stored as raw bytes, the '*' wild card as a marker.
+ * Every entry remembers its position in the text file, so converting
+ * back and forth between both formats is lossless.
+ *
+ * <pre>
+ * header  : int magic, int version, int count, int nextOrder, long logOffset
+ * offsets : count * long, the offsets of the sorted records
+ * records : the sorted records, followed by the appended ones
+ * record  : int order, short keyLength, byte[] key (UTF-8), short valueCount,
+ *           valueCount * (byte type, ...)
+ * </pre>
+ *
+ * Version 1 files stored the valueCount in a single byte; they are
+ * rewritten in the current format when opened.
+ *
+ * This class implements {@link Map} from keys to {@link Checksums} so
+ * it can be used in place of the map loaded from the text file.
+ * Modifying the returned checksums does not modify the index file; they
+ * have to be put back.  An index opened read only can't be modified.
+ */
+public class ChecksumIndex extends AbstractMap {
+
+    static final int MAGIC = 0x434b5349;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 24;
+
+    static final byte WILDCARD = 0;
+    static final byte DIGEST = 1;
+    static final byte TEXT = 2;
+
+    /**
+     * The minimum number of appended entries before the log is compacted.
+     */
+    static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+    /**
+     * The methods used to unmap a buffer, or null if the VM does not provide them.
+     */
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner", new Class[0]);
+            clean = Class.forName("sun.misc.Cleaner").getMethod("clean", new Class[0]);
+            cleaner.setAccessible(true);
+            clean.setAccessible(true);
+        } catch (Throwable e) {
+            // not a Sun VM, or one that does not give access to its internals
+            cleaner = null;
+            clean = null;
+        }
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private final File file;
+    private final boolean readOnly;
+    private RandomAccessFile raf;
+    private MappedByteBuffer sorted;
+    private int version;
+    private int count;
+    private int nextOrder;
+    private final Map appended = new HashMap();
+
+    private ChecksumIndex(File file, boolean readOnly) {
+        this.file = file;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Opens an existing index file.
+     */
+    public static ChecksumIndex open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Opens an existing index file.
+     * 
+     * @param readOnly should the file be opened for reading only?  Nothing can
+     *        be put in the index then, and an older index is not upgraded.
+     */
+    public static ChecksumIndex open(File file, boolean readOnly) throws IOException {
+        ChecksumIndex rc = new ChecksumIndex(file, readOnly);
+        rc.open();
+        return rc;
+    }
+
+    /**
+     * Writes a new index file holding the given entries, in the order of the map.
+     */
+    public static ChecksumIndex create(File file, Map checksums) throws IOException {
+        List records = new ArrayList(checksums.size());
+        int order = 0;
+        for (Iterator it = checksums.entrySet().iterator(); it.hasNext();) {
+            Map.Entry entry = (Map.Entry) it.next();
+            records.add(new Record(order++, (String) entry.getKey(), (Checksums) entry.getValue()));
+        }
+        write(file, records, order);
+        return open(file);
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        FileChannel channel = raf.getChannel();
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Invalid checksum index: " + file);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Invalid checksum index: " + file);
+        }
+        version = header.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported checksum index version " + version + ": " + file);
+        }
+        count = header.getInt();
+        nextOrder = header.getInt();
+        long logOffset = header.getLong();
+        sorted = channel.map(FileChannel.MapMode.READ_ONLY, 0, logOffset);
+
+        // the log is small, so it is kept in memory
+        long size = channel.size();
+        ByteBuffer log = ByteBuffer.allocate((int) (size - logOffset));
+        channel.read(log, logOffset);
+        log.flip();
+        while (log.hasRemaining()) {
+            int start = log.position();
+            try {
+                Record record = readRecord(log);
+                appended.put(record.key, record);
+                nextOrder = Math.max(nextOrder, record.order + 1);
+            } catch (BufferUnderflowException e) {
+                // an append was interrupted, drop the incomplete record
+                if (!readOnly) {
+                    channel.truncate(logOffset + start);
+                }
+                break;
+            }
+        }
+        if (!readOnly) {
+            raf.seek(channel.size());
+            if (version < VERSION) {
+                compact();
+            }
+        }
+    }
+
+    public synchronized Object get(Object key) {
+        Record record = lookup((String) key);
+        return record != null ? record.values : null;
+    }
+
+    public synchronized boolean containsKey(Object key) {
+        return lookup((String) key) != null;
+    }
+
+    /**
+     * Appends the entry to the log of the index file.
+     */
+    public synchronized Object put(Object key, Object value) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Checksum index is read only: " + file);
+        }
+        Record previous = lookup((String) key);
+        Record record = new Record(previous != null ? previous.order : nextOrder++, (String) key, (Checksums) value);
+        try {
+            raf.write(toBytes(record));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to " + file + ": " + e.getMessage());
+        }
+        appended.put(record.key, record);
+        return previous != null ? previous.values : null;
+    }
+
+    public synchronized int size() {
+        return getRecords().size();
+    }
+
+    /**
+     * @return the entries, in the order of the text file
+     */
+    public synchronized Set entrySet() {
+        LinkedHashMap rc = new LinkedHashMap();
+        for (Iterator it = getRecords().iterator(); it.hasNext();) {
+            Record record = (Record) it.next();
+            rc.put(record.key, record.values);
+        }
+        return rc.entrySet();
+    }
+
+    /**
+     * @return the number of entries in the append log
+     */
+    public synchronized int getLogSize() {
+        return appended.size();
+    }
+
+    /**
+     * Folds the append log back into the sorted section.
+     */
+    public synchronized void compact() throws IOException {
+        if (readOnly) {
+            throw new IOException("Checksum index is read only: " + file);
+        }
+        List records = getRecords();
+        int order = nextOrder;
+        release();
+        write(file, records, order);
+        open();
+    }
+
+    /**
+     * Closes the index file, compacting it first if the log grew too large.
+     */
+    public synchronized void close() throws IOException {
+        if (raf == null) {
+            return;
+        }
+        if (!readOnly && appended.size() > Math.max(MIN_COMPACTION_THRESHOLD, count / 8)) {
+            compact();
+        }
+        release();
+    }
+
+    private void release() throws IOException {
+        raf.close();
+        raf = null;
+        MappedByteBuffer buffer = sorted;
+        sorted = null;
+        unmap(buffer);
+        appended.clear();
+    }
+
+    /**
+     * Unmaps the buffer right away instead of when it is garbage collected,
+     * as some platforms do not allow a mapped file to be deleted or renamed.
+     * This relies on the Sun VM internals; on other VMs the buffer is just
+     * left to the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (CLEANER == null || !CLEANER.getDeclaringClass().isInstance(buffer)) {
+            return;
+        }
+        try {
+            Object cleaner = CLEANER.invoke(buffer, new Object[0]);
+            if (cleaner != null) {
+                CLEAN.invoke(cleaner, new Object[0]);
+            }
+        } catch (IllegalAccessException e) {
+            // the buffer is left to the garbage collector
+        } catch (InvocationTargetException e) {
+            // the buffer is left to the garbage collector
+        }
+    }
+
+    private Record lookup(String key) {
+        Record record = (Record) appended.get(key);
+        if (record != null) {
+            return record;
+        }
+        byte[] k = utf8(key);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = (int) sorted.getLong(HEADER_SIZE + mid * 8);
+            int c = compareKey(offset, k);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                ByteBuffer buffer = sorted.duplicate();
+                buffer.position(offset);
+                return readRecord(buffer);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the key of the record at the given offset with a key, without decoding it.
+     */
+    private int compareKey(int offset, byte[] key) {
+        int length = sorted.getShort(offset + 4) & 0xffff;
+        int start = offset + 6;
+        for (int i = 0; i < length && i < key.length; i++) {
+            int c = (sorted.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * @return all the records, in the order of the text file
+     */
+    private List getRecords() {
+        Map rc = new HashMap();
+        ByteBuffer buffer = sorted.duplicate();
+        for (int i = 0; i < count; i++) {
+            buffer.position((int) sorted.getLong(HEADER_SIZE + i * 8));
+            Record record = readRecord(buffer);
+            rc.put(record.key, record);
+        }
+        rc.putAll(appended);
+        List list = new ArrayList(rc.values());
+        Collections.sort(list, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                int order1 = ((Record) o1).order;
+                int order2 = ((Record) o2).order;
+                return order1 < order2 ? -1 : (order1 == order2 ? 0 : 1);
+            }
+        });
+        return list;
+    }
+
+    private static void write(File file, List records, int nextOrder) throws IOException {
+        Record[] sortedRecords = (Record[]) records.toArray(new Record[records.size()]);
+        Arrays.sort(sortedRecords, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return compareBytes(((Record) o1).keyBytes, ((Record) o2).keyBytes);
+            }
+        });
+        // a unique name, so that concurrent builds do not write to the same file
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        boolean written = false;
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            long[] offsets = new long[sortedRecords.length];
+            long base = HEADER_SIZE + sortedRecords.length * 8L;
+            for (int i = 0; i < sortedRecords.length; i++) {
+                offsets[i] = base + data.size();
+                data.write(toBytes(sortedRecords[i]));
+            }
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(head);
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(sortedRecords.length);
+            dos.writeInt(nextOrder);
+            dos.writeLong(base + data.size());
+            for (int i = 0; i < offsets.length; i++) {
+                dos.writeLong(offsets[i]);
+            }
+            dos.flush();
+            out.write(head.toByteArray());
+            out.write(data.toByteArray());
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+    }
+
+    private static byte[] toBytes(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(record.order);
+        out.writeShort(record.keyBytes.length);
+        out.write(record.keyBytes);
+        List values = record.values.getValues();
+        if (values.size() > 0xffff) {
+            throw new IOException("Too many checksums for " + record.key);
+        }
+        out.writeShort(values.size());
+        for (Iterator it = values.iterator(); it.hasNext();) {
+            Object value = it.next();
+            if (value instanceof Digest) {
+                byte[] digest = ((Digest) value).getBytes();
+                out.writeByte(DIGEST);
+                out.writeByte(digest.length);
+                out.write(digest);
+            } else if (Checksums.WILDCARD.equals(value)) {
+                out.writeByte(WILDCARD);
+            } else {
+                byte[] text = utf8((String) value);
+                out.writeByte(TEXT);
+                out.writeShort(text.length);
+                out.write(text);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Record readRecord(ByteBuffer buffer) {
+        int order = buffer.getInt();
+        byte[] key = new byte[buffer.getShort() & 0xffff];
+        buffer.get(key);
+        int valueCount = version > 1 ? buffer.getShort() & 0xffff : buffer.get() & 0xff;
+        Checksums values = new Checksums();
+        for (int i = 0; i < valueCount; i++) {
+            byte type = buffer.get();
+            if (type == WILDCARD) {
+                values.add(Checksums.WILDCARD);
+            } else if (type == DIGEST) {
+                byte[] digest = new byte[buffer.get() & 0xff];
+                buffer.get(digest);
+                values.add(new Digest(digest));
+            } else {
+                byte[] text = new byte[buffer.getShort() & 0xffff];
+                buffer.get(text);
+                values.add(fromUtf8(text));
+            }
+        }
+        return new Record(order, fromUtf8(key), values);
+    }
+
+    static int compareBytes(byte[] b1, byte[] b2) {
+        for (int i = 0; i < b1.length && i < b2.length; i++) {
+            int c = (b1[i] & 0xff) - (b2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+    private static String fromUtf8(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+    private static final class Record {
+        final int order;
+        final String key;
+        final byte[] keyBytes;
+        final Checksums values;
+
+        Record(int order, String key, Checksums values) {
+            this.order = order;
+            this.key = key;
+            this.keyBytes = utf8(key);
+            this.values = values;
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Runs the resolve, checksum and compare stages of a number of items
+ * as a pipeline, so that resolving an item overlaps with computing
+ * the checksums of the items resolved before it.
+ *
+ * Resolved files are handed to the checksum workers through a bounded
+ * queue.  The compare stage runs on the calling thread: in item order by
+ * default, or as soon as the checksums of an item are available when
+ * <code>failFast</code> is set, in which case the first failure cancels
+ * all outstanding work.  Otherwise, items that could not be resolved or
+ * checksummed do not stop the others from being compared; their errors
+ * are reported together once all the items went through the pipeline.
+ */
+public class ChecksumPipeline {
+
+    /**
+     * The stages of the pipeline.  Items are identified by their index.
+     */
+    public interface Stages {
+
+        File resolve(int index) throws MojoExecutionException;
+
+        Digest[] checksum(int index, File file) throws MojoExecutionException;
+
+        /**
+         * @return true if the item failed the comparison
+         */
+        boolean compare(int index, Digest[] sums) throws MojoExecutionException;
+
+    }
+
+    private static class Item {
+        final int index;
+        File file;
+        Digest[] sums;
+        Throwable error;
+
+        Item(int index) {
+            this.index = index;
+        }
+    }
+
+    private final int resolvers;
+    private final int checksummers;
+    private final int queueSize;
+    private final boolean failFast;
+    private int compared;
+
+    /**
+     * @param threads the number of resolver threads, and of checksum threads
+     * @param failFast should the first failed comparison cancel the remaining work?
+     */
+    public ChecksumPipeline(int threads, boolean failFast) {
+        this(threads, threads, threads * 2, failFast);
+    }
+
+    public ChecksumPipeline(int resolvers, int checksummers, int queueSize, boolean failFast) {
+        this.resolvers = Math.max(1, resolvers);
+        this.checksummers = Math.max(1, checksummers);
+        this.queueSize = Math.max(1, queueSize);
+        this.failFast = failFast;
+    }
+
+    /**
+     * @return the number of items compared by the last run
+     */
+    public int getCompared() {
+        return compared;
+    }
+
+    /**
+     * Runs all the items through the pipeline.
+     * 
+     * @param count the number of items
+     * @return true if at least one item failed the comparison
+     * @throws MojoExecutionException if an item could not be resolved or checksummed
+     */
+    public boolean run(int count, final Stages stages) throws MojoExecutionException {
+        compared = 0;
+        if (count == 0) {
+            return false;
+        }
+        final BlockingQueue resolved = new LinkedBlockingQueue(queueSize);
+        final BlockingQueue checksummed = new LinkedBlockingQueue();
+        ExecutorService resolverPool = Executors.newFixedThreadPool(Math.min(resolvers, count));
+        ExecutorService checksumPool = Executors.newFixedThreadPool(Math.min(checksummers, count));
+        try {
+            for (int i = 0; i < count; i++) {
+                final Item item = new Item(i);
+                resolverPool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            item.file = stages.resolve(item.index);
+                        } catch (Throwable e) {
+                            item.error = e;
+                        }
+                        try {
+                            resolved.put(item);
+                        } catch (InterruptedException e) {
+                            // cancelled
+                        }
+                    }
+                });
+            }
+            // every item goes through the resolved queue exactly once
+            final AtomicInteger remaining = new AtomicInteger(count);
+            for (int i = 0; i < Math.min(checksummers, count); i++) {
+                checksumPool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            while (remaining.getAndDecrement() > 0) {
+                                Item item = (Item) resolved.take();
+                                if (item.error == null) {
+                                    try {
+                                        item.sums = stages.checksum(item.index, item.file);
+                                    } catch (Throwable e) {
+                                        item.error = e;
+                                    }
+                                }
+                                checksummed.put(item);
+                            }
+                        } catch (InterruptedException e) {
+                            // cancelled
+                        }
+                    }
+                });
+            }
+            return compare(count, checksummed, stages);
+        } finally {
+            resolverPool.shutdownNow();
+            checksumPool.shutdownNow();
+        }
+    }
+
+    private boolean compare(int count, BlockingQueue checksummed, Stages stages) throws MojoExecutionException {
+        boolean failed = false;
+        List errors = new ArrayList();
+        Item[] pending = new Item[count];
+        int next = 0;
+        for (int received = 0; received < count; received++) {
+            Item item;
+            try {
+                item = (Item) checksummed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while computing checksums", e);
+            }
+            if (failFast) {
+                if (item.error != null) {
+                    rethrow(item.error);
+                }
+                compared++;
+                if (stages.compare(item.index, item.sums)) {
+                    return true;
+                }
+                continue;
+            }
+            // keep the comparisons, and the messages they log, in item order
+            pending[item.index] = item;
+            while (next < count && pending[next] != null) {
+                if (pending[next].error != null) {
+                    errors.add(pending[next].error);
+                } else {
+                    compared++;
+                    failed |= stages.compare(next, pending[next].sums);
+                }
+                pending[next++] = null;
+            }
+        }
+        if (errors.size() == 1) {
+            rethrow((Throwable) errors.get(0));
+        } else if (!errors.isEmpty()) {
+            StringBuffer sb = new StringBuffer();
+            sb.append(errors.size()).append(" items could not be checksummed:");
+            for (Iterator it = errors.iterator(); it.hasNext();) {
+                sb.append("\n  ").append(((Throwable) it.next()).getMessage());
+            }
+            throw new MojoExecutionException(sb.toString(), (Throwable) errors.get(0));
+        }
+        return failed;
+    }
+
+    private static void rethrow(Throwable error) throws MojoExecutionException {
+        if (error instanceof MojoExecutionException) {
+            throw (MojoExecutionException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new MojoExecutionException("Could not compute checksum: " + error, error);
+    }
+
+}
@@ -20,6 +20,7 @@ package org.apache.servicemix.maven.plugin.checksum;
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,18 +31,23 @@ import java.io.OutputStreamWriter;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -71,6 +77,15 @@ public class ChecksumValidatorMojo extends AbstractMojo {
      */
     protected MavenProject project;
 
+    /**
+     * The current build session.
+     * 
+     * @parameter expression="${session}"
+     * @required
+     * @readonly
+     */
+    protected MavenSession session;
+
     /**
      * Remote repositories which will be searched for source attachments.
      *
@@ -116,7 +131,33 @@ public class ChecksumValidatorMojo extends AbstractMojo {
     protected File checksums;
 
     /**
-     * The checksum algorithm used to in the checksums. 
+     * The format of the checksum files.  With <code>text</code>, the
+     * checksum files are read and written as is.  With <code>indexed</code>,
+     * an indexed binary copy of every checksum file is kept next to it, e.g.
+     * <code>checksums.txt.idx</code>.  Validation looks the checksums up in
+     * the index, and generation appends to the index instead of rewriting
+     * the text file.  Whenever the text file is newer, the index is rebuilt
+     * from it, keeping the entries that were only appended to the index; to
+     * remove an entry, remove it from the text file and delete the index.
+     * 
+     * @parameter default-value="text"
+     */
+    private String checksumFormat;
+
+    /**
+     * Should the text checksum files be rewritten from their index after
+     * generating checksums in the <code>indexed</code> format?
+     * 
+     * @parameter expression="${checksum.exportIndex}" default-value="false"
+     */
+    private boolean exportChecksumIndex;
+
+    /**
+     * The checksum algorithm used to in the checksums.  This can be a comma
+     * separated list, in which case every file is read only once to compute
+     * all the checksums.  The first algorithm is checked against the
+     * <code>checksums</code> file, every other one against a file next to it
+     * named after the algorithm, e.g. <code>checksums-sha256.txt</code>.
      * 
      * @parameter default-value="SHA-1"
      */
@@ -150,6 +191,153 @@ public class ChecksumValidatorMojo extends AbstractMojo {
      */
     private boolean includeReportArtifacts;
 
+    /**
+     * Should the transitive dependencies of the project be included in
+     * the checksum validation?
+     * 
+     * @parameter expression="${checksum.includeTransitiveArtifacts}" default-value="false"
+     */
+    private boolean includeTransitiveArtifacts;
+
+    /**
+     * The number of threads used to checksum the artifacts.  A value of 0
+     * or less uses one thread per available processor.  Artifacts are
+     * always resolved by a single thread, as the artifact resolver is not
+     * thread safe, but their checksums are computed while the next ones
+     * are resolved.
+     * 
+     * @parameter default-value="0"
+     */
+    private int threads;
+
+    /**
+     * Should validation stop at the first artifact with an invalid
+     * checksum, instead of reporting all of them?
+     * 
+     * @parameter expression="${checksum.failFast}" default-value="false"
+     */
+    private boolean failFast;
+
+    /**
+     * Should computed checksums be cached between builds?  Cached
+     * checksums are reused for as long as the length and last
+     * modified time of the file are unchanged.
+     * 
+     * @parameter default-value="true"
+     */
+    private boolean useChecksumCache;
+
+    /**
+     * The file that caches the computed checksums.
+     * 
+     * @parameter default-value="${project.build.directory}/checksum-cache.properties"
+     */
+    private File checksumCache;
+
+    /**
+     * Should all the checksums be recomputed, ignoring the cached ones?
+     * 
+     * @parameter expression="${checksum.forceRehash}" default-value="false"
+     */
+    private boolean forceRehash;
+
+    /**
+     * How files are read while computing checksums: <code>stream</code>,
+     * <code>channel</code>, <code>mapped</code> or <code>auto</code>, which
+     * memory maps files of at least <code>mappedDigestThreshold</code> bytes
+     * and reads smaller ones through a large direct buffer.
+     * 
+     * @parameter default-value="auto"
+     */
+    private String digestMode;
+
+    /**
+     * The file size, in bytes, from which the <code>auto</code> digest mode
+     * memory maps files.
+     * 
+     * @parameter default-value="16777216"
+     */
+    private long mappedDigestThreshold;
+
+    /**
+     * Should the <code>.sha1</code>, <code>.md5</code>, ... files that sit
+     * next to the artifacts in the local repository be trusted instead of
+     * computing the checksums?  Checksums are still computed for files
+     * without such a sidecar file.
+     * 
+     * @parameter expression="${checksum.trustRepositoryChecksums}" default-value="false"
+     */
+    private boolean trustRepositoryChecksums;
+
+    /**
+     * The percentage of trusted repository checksums that are verified
+     * against the actual content of the file anyway.
+     * 
+     * @parameter default-value="5"
+     */
+    private int repositoryChecksumSpotCheckPercentage;
+
+    private final Random spotChecks = new Random();
+
+    private final AtomicInteger trustedChecksums = new AtomicInteger();
+
+    /**
+     * Should the checksums and validations be shared with the other
+     * modules of the build, so that every artifact is only checked once?
+     * 
+     * @parameter default-value="true"
+     */
+    private boolean useValidationRegistry;
+
+    private ValidationRegistry validationRegistry;
+
+    /**
+     * Should a fingerprint of the dependencies and checksum files be kept,
+     * so that the validation is skipped while none of them changes?
+     * 
+     * @parameter default-value="true"
+     */
+    private boolean useValidationFingerprint;
+
+    /**
+     * The file that holds the fingerprint of the last successful validation.
+     * 
+     * @parameter default-value="${project.build.directory}/checksum-fingerprint.properties"
+     */
+    private File validationFingerprint;
+
+    /**
+     * The number of hours after which the fingerprint expires and all the
+     * checksums are validated again.  A value of 0 or less never expires it.
+     * 
+     * @parameter default-value="24"
+     */
+    private int validationFingerprintExpiry;
+
+    /**
+     * Should all the checksums be validated, ignoring the fingerprint?
+     * 
+     * @parameter expression="${checksum.forceValidation}" default-value="false"
+     */
+    private boolean forceValidation;
+
+    /**
+     * If set, a JSON report with the resolution time, checksum time,
+     * cache usage and verdict of every artifact, and the totals of the
+     * build, is written to this file.
+     * 
+     * @parameter expression="${checksum.timingReport}"
+     */
+    private File timingReport;
+
+    private ValidationReport report;
+
+    private DigestCache digestCache;
+
+    private FileDigester fileDigester;
+
+    private String[] checksumAlgorithms;
+
     protected String key(Artifact pom) {
         StringBuffer sb = new StringBuffer();
         sb.append(pom.getGroupId());
@@ -189,33 +377,198 @@ public class ChecksumValidatorMojo extends AbstractMojo {
         return artifact.getFile();
     }
 
-    protected String checksum(File file) throws MojoExecutionException {
-        try {
-            MessageDigest md = MessageDigest.getInstance(checksumAlgorithm);
-            FileInputStream is=null;
-            try {
-                is = new FileInputStream(file);
-                byte buffer[] = new byte[1024*4];
-                int c;
-                while( (c=is.read(buffer)) >= 0 ) {
-                    md.update(buffer,0, c);
+    /**
+     * @return the checksums of the file, one per checksum algorithm
+     */
+    protected Digest[] checksum(File file) throws MojoExecutionException {
+        return checksum(file, null);
+    }
+
+    /**
+     * @param entry the report entry of the file, or null
+     * @return the checksums of the file, one per checksum algorithm
+     */
+    protected Digest[] checksum(File file, ValidationReport.Entry entry) throws MojoExecutionException {
+        String[] algorithms = getChecksumAlgorithms();
+        Digest[] rc = new Digest[algorithms.length];
+        Digest[] sidecars = getRepositoryChecksums(file);
+        boolean spotCheck = sidecars != null && spotChecks.nextInt(100) < repositoryChecksumSpotCheckPercentage;
+        List missing = new ArrayList();
+        for (int i = 0; i < algorithms.length; i++) {
+            if (sidecars != null && sidecars[i] != null && !spotCheck) {
+                rc[i] = sidecars[i];
+                trustedChecksums.incrementAndGet();
+            } else {
+                if (validationRegistry != null) {
+                    rc[i] = validationRegistry.getDigest(algorithms[i], file);
                 }
-                byte[] digest = md.digest();
-                
-                return toString(digest);
-                
-            } catch (IOException e) {
-                throw new MojoExecutionException("Could read file: "+checksums);
-            } finally {
-                try {
-                    is.close();
-                } catch (Throwable e) {
+                if (rc[i] == null && digestCache != null) {
+                    rc[i] = Digest.parse(digestCache.get(algorithms[i], file));
                 }
             }
+            if (rc[i] == null) {
+                missing.add(algorithms[i]);
+            }
+        }
+        if (entry != null) {
+            entry.setCacheHit(missing.isEmpty());
+        }
+        if (!missing.isEmpty()) {
+            Digest[] computed = computeChecksums(file, (String[]) missing.toArray(new String[missing.size()]));
+            // only count the bytes that were actually read to compute checksums
+            if (entry != null) {
+                entry.setBytesHashed(file.length());
+            }
+            for (int i = 0, j = 0; i < algorithms.length; i++) {
+                if (rc[i] == null) {
+                    rc[i] = computed[j++];
+                    if (digestCache != null) {
+                        digestCache.put(algorithms[i], file, rc[i].toString());
+                    }
+                }
+            }
+        }
+        if (validationRegistry != null) {
+            for (int i = 0; i < algorithms.length; i++) {
+                validationRegistry.putDigest(algorithms[i], file, rc[i]);
+            }
+        }
+        if (spotCheck) {
+            for (int i = 0; i < algorithms.length; i++) {
+                if (sidecars[i] != null && !sidecars[i].equals(rc[i])) {
+                    getLog().warn("Repository checksum "+getSidecarFile(file, algorithms[i])+" does not match the content of "+file+" ("+rc[i]+")");
+                }
+            }
+        }
+        return rc;
+    }
 
+    /**
+     * Reads the checksums Maven stored next to a file of the local repository.
+     * 
+     * @return the repository checksums, one per checksum algorithm and null for a missing one,
+     *         or null if they should not be used for this file
+     */
+    protected Digest[] getRepositoryChecksums(File file) {
+        if (!trustRepositoryChecksums || !isInLocalRepository(file)) {
+            return null;
+        }
+        String[] algorithms = getChecksumAlgorithms();
+        Digest[] rc = new Digest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            rc[i] = Digest.parse(readSidecar(getSidecarFile(file, algorithms[i]), algorithms[i]));
+        }
+        return rc;
+    }
+
+    private boolean isInLocalRepository(File file) {
+        String basedir = new File(localRepository.getBasedir()).getAbsolutePath() + File.separator;
+        return file.getAbsolutePath().startsWith(basedir);
+    }
+
+    protected static File getSidecarFile(File file, String algorithm) {
+        return new File(file.getPath() + "." + algorithm.toLowerCase().replaceAll("[^a-z0-9]", ""));
+    }
+
+    /**
+     * @return the checksum in the sidecar file, or null if there is no valid one
+     */
+    protected static String readSidecar(File sidecar, String algorithm) {
+        if (!sidecar.canRead()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(sidecar), "UTF-8"));
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            // the checksum may be followed by the file name, as in the output of sha1sum
+            String sum = line.trim().split("\\s+")[0].toLowerCase();
+            if (sum.length() != MessageDigest.getInstance(algorithm).getDigestLength() * 2
+                || !sum.matches("[0-9a-f]+")) {
+                return null;
+            }
+            return sum;
+        } catch (IOException e) {
+            return null;
         } catch (NoSuchAlgorithmException e) {
-            throw new MojoExecutionException("Invalid checksum algorithm: "+checksumAlgorithm, e);
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (Throwable e) {
+            }
+        }
+    }
+
+    /**
+     * Computes the checksums for all the given algorithms in a single pass over the file.
+     */
+    protected Digest[] computeChecksums(File file, String[] algorithms) throws MojoExecutionException {
+        MessageDigest[] mds = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            try {
+                mds[i] = MessageDigest.getInstance(algorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new MojoExecutionException("Invalid checksum algorithm: "+algorithms[i], e);
+            }
         }
+        try {
+            getFileDigester().update(file, mds);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could read file: "+checksums);
+        }
+        Digest[] rc = new Digest[mds.length];
+        for (int i = 0; i < mds.length; i++) {
+            rc[i] = new Digest(mds[i].digest());
+        }
+        return rc;
+    }
+
+    protected String[] getChecksumAlgorithms() {
+        if (checksumAlgorithms == null) {
+            String[] t = checksumAlgorithm.split(",");
+            List rc = new ArrayList(t.length);
+            for (int i = 0; i < t.length; i++) {
+                String algorithm = t[i].trim();
+                if (algorithm.length() > 0 && !rc.contains(algorithm)) {
+                    rc.add(algorithm);
+                }
+            }
+            checksumAlgorithms = (String[]) rc.toArray(new String[rc.size()]);
+        }
+        return checksumAlgorithms;
+    }
+
+    /**
+     * @return the file that holds the checksums for the algorithm with the given index
+     */
+    protected File getChecksumFile(int algorithm) {
+        if (algorithm == 0) {
+            return checksums;
+        }
+        String suffix = "-" + getChecksumAlgorithms()[algorithm].toLowerCase().replaceAll("[^a-z0-9]", "");
+        String name = checksums.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot) + suffix + name.substring(dot);
+        } else {
+            name = name + suffix;
+        }
+        return new File(checksums.getParentFile(), name);
+    }
+
+    private FileDigester getFileDigester() throws MojoExecutionException {
+        if (fileDigester == null) {
+            try {
+                fileDigester = new FileDigester(digestMode, mappedDigestThreshold);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+        }
+        return fileDigester;
     }
     
     static String toString(byte[] digest) {
@@ -228,24 +581,182 @@ public class ChecksumValidatorMojo extends AbstractMojo {
     }
 
     public void execute() throws MojoExecutionException {
-        if( generate ) {
-            generate();
-        } else {
-            validate();
+        fileDigester = null;
+        getFileDigester();
+        if (!"text".equals(checksumFormat) && !"indexed".equals(checksumFormat)) {
+            throw new MojoExecutionException("Invalid checksum format: "+checksumFormat);
+        }
+        checksumAlgorithms = null;
+        String[] algorithms = getChecksumAlgorithms();
+        if (algorithms.length == 0) {
+            throw new MojoExecutionException("Invalid checksum algorithm: "+checksumAlgorithm);
+        }
+        for (int i = 0; i < algorithms.length; i++) {
+            try {
+                MessageDigest.getInstance(algorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new MojoExecutionException("Invalid checksum algorithm: "+algorithms[i], e);
+            }
+        }
+        if (useChecksumCache) {
+            digestCache = new DigestCache(checksumCache);
+            if (!forceRehash) {
+                digestCache.load();
+            }
+        }
+        trustedChecksums.set(0);
+        validationRegistry = useValidationRegistry ? ValidationRegistry.getInstance(session) : null;
+        report = timingReport != null ? new ValidationReport(generate ? "generate" : "validate", algorithms) : null;
+        try {
+            if( generate ) {
+                generate();
+            } else {
+                validate();
+            }
+        } finally {
+            storeDigestCache();
+            storeReport();
+        }
+        if (trustRepositoryChecksums) {
+            getLog().info(trustedChecksums.get() + " checksum(s) taken from the local repository");
+        }
+    }
+
+    private void storeDigestCache() {
+        if (digestCache == null) {
+            return;
+        }
+        try {
+            digestCache.store();
+        } catch (IOException e) {
+            getLog().warn("Could not write checksum cache: " + checksumCache, e);
+        } finally {
+            digestCache = null;
+        }
+    }
+
+    private void storeReport() {
+        if (report == null) {
+            return;
+        }
+        try {
+            report.write(timingReport);
+        } catch (IOException e) {
+            getLog().warn("Could not write timing report: " + timingReport, e);
+        } finally {
+            report = null;
         }
     }
 
     private void validate() throws MojoExecutionException {
-        LinkedHashMap checksums = loadChecksums();
-        
-        boolean failed = false;
+        Artifact[] artifacts = getArtifactsAndPoms();
+        String fingerprint = useValidationFingerprint ? computeFingerprint(artifacts) : null;
+        if (fingerprint != null && !forceValidation) {
+            long maxAge = validationFingerprintExpiry * 60L * 60L * 1000L;
+            if (fingerprint.equals(Fingerprint.load(validationFingerprint, maxAge))) {
+                getLog().info("Dependencies and checksum files are unchanged since the last successful validation");
+                if (report != null) {
+                    report.setUpToDate(true);
+                }
+                return;
+            }
+        }
+        validationFingerprint.delete();
+
+        String[] algorithms = getChecksumAlgorithms();
+        Map[] checksums = new Map[algorithms.length];
+        try {
+            for (int j = 0; j < algorithms.length; j++) {
+                checksums[j] = isIndexed() ? openChecksumIndex(j, false) : loadChecksums(getChecksumFile(j));
+            }
+            validate(checksums, artifacts);
+        } finally {
+            closeChecksumIndexes(checksums);
+        }
+
+        if (fingerprint != null) {
+            try {
+                Fingerprint.store(validationFingerprint, fingerprint);
+            } catch (IOException e) {
+                getLog().warn("Could not write validation fingerprint: " + validationFingerprint, e);
+            }
+        }
+    }
+
+    /**
+     * Computes a fingerprint of the artifacts, the checksum files and the settings that affect the validation.
+     * 
+     * @return the fingerprint, or null if one of the artifacts is not available locally yet
+     */
+    private String computeFingerprint(Artifact[] artifacts) throws MojoExecutionException {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(checksumAlgorithm);
+        fingerprint.add(String.valueOf(trustRepositoryChecksums));
+        for (int i = 0; i < artifacts.length; i++) {
+            File file = artifacts[i].getFile();
+            if (file == null) {
+                file = new File(localRepository.getBasedir(), localRepository.pathOf(artifacts[i]));
+            }
+            if (!file.exists()) {
+                return null;
+            }
+            fingerprint.addFile(key(artifacts[i]), file);
+        }
+        for (int j = 0; j < getChecksumAlgorithms().length; j++) {
+            try {
+                fingerprint.addContent(getChecksumFile(j));
+                if (isIndexed()) {
+                    fingerprint.addContent(getChecksumIndexFile(j));
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return fingerprint.getValue();
+    }
+
+    private void validate(Map[] checksums, Artifact[] artifacts) throws MojoExecutionException {
+        String[] algorithms = getChecksumAlgorithms();
         
-        for ( Iterator it = getArtifacts().iterator(); it.hasNext(); )
-        {
-            Artifact artifact = (Artifact) it.next();
-            Artifact pom = getPomArtifact( artifact );
-            failed |= validateArtifact(checksums, pom);
-            failed |= validateArtifact(checksums, artifact);
+        int served = 0;
+        if (validationRegistry != null) {
+            // skip the artifacts already validated by other modules of this build
+            List pending = new ArrayList(artifacts.length);
+            for (int i = 0; i < artifacts.length; i++) {
+                if (isValidated(artifacts[i])) {
+                    served++;
+                    if (report != null) {
+                        report.addEntry(key(artifacts[i])).setVerdict(ValidationReport.SKIPPED);
+                    }
+                } else {
+                    pending.add(artifacts[i]);
+                }
+            }
+            artifacts = (Artifact[]) pending.toArray(new Artifact[pending.size()]);
+        }
+        final Artifact[] pending = artifacts;
+        final Map[] checksumMaps = checksums;
+        ChecksumPipeline pipeline = createPipeline(pending.length, failFast);
+        boolean failed = pipeline.run(pending.length, new ArtifactStages(pending) {
+            public boolean compare(int index, Digest[] sums) throws MojoExecutionException {
+                boolean artifactFailed = false;
+                for (int j = 0; j < sums.length; j++) {
+                    artifactFailed |= validateArtifact(checksumMaps[j], getChecksumFile(j), pending[index], sums[j]);
+                }
+                if (!artifactFailed && validationRegistry != null) {
+                    for (int j = 0; j < sums.length; j++) {
+                        validationRegistry.setValidated(getChecksumFile(j), key(pending[index]));
+                    }
+                }
+                setVerdict(index, artifactFailed ? ValidationReport.INVALID : ValidationReport.VALID);
+                return artifactFailed;
+            }
+        });
+        if (failed && failFast && pipeline.getCompared() < pending.length) {
+            getLog().error("Stopped at the first invalid checksum, " + (pending.length - pipeline.getCompared()) + " artifact(s) were not validated");
+        }
+        if (validationRegistry != null) {
+            getLog().info(served + " validation(s) served from the build session registry");
         }
         
         if( failed ) {
@@ -253,26 +764,35 @@ public class ChecksumValidatorMojo extends AbstractMojo {
         }
     }
 
+    private boolean isValidated(Artifact artifact) {
+        for (int j = 0; j < getChecksumAlgorithms().length; j++) {
+            if (!validationRegistry.isValidated(getChecksumFile(j), key(artifact))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 
      * @param checksums
+     * @param checksumFile the file the checksums were loaded from
      * @param artifact
+     * @param sum the checksum of the artifact
      * @return - true if validation failed.
      * @throws MojoExecutionException
      */
-    private boolean validateArtifact(LinkedHashMap checksums, Artifact artifact) throws MojoExecutionException {
-        File file = resolve(artifact);        
-        String sum = checksum(file);
+    protected boolean validateArtifact(Map checksums, File checksumFile, Artifact artifact, Digest sum) throws MojoExecutionException {
         String key = key(artifact);
-        List list = (List)checksums.get(key);
+        Checksums list = (Checksums)checksums.get(key);
         if( list == null ) {
-            list = (List)checksums.get(keyAnyVersion(artifact));
+            list = (Checksums)checksums.get(keyAnyVersion(artifact));
         }
         if( list == null ) {
-            getLog().error("No checksum specified for "+key+" in "+this.checksums+" ("+sum+")" );
+            getLog().error("No checksum specified for "+key+" in "+checksumFile+" ("+sum+")" );
             return true;
-        } else if ( !list.contains(sum) && !list.contains("*") ) {
-            getLog().error("Checksum mismatch for "+key+" in "+this.checksums+" expected one of "+list+" but was "+sum );
+        } else if ( !list.contains(sum) && !list.isWildcard() ) {
+            getLog().error("Checksum mismatch for "+key+" in "+checksumFile+" expected one of "+list+" but was "+sum );
             return true;
         }
         return false;
@@ -280,67 +800,306 @@ public class ChecksumValidatorMojo extends AbstractMojo {
 
     public void generate() throws MojoExecutionException {
         
-        LinkedHashMap checksums = new LinkedHashMap();
-        
-        boolean modified=true;
-        try { 
-            checksums = loadChecksums();
-            modified=false;
-        } catch ( MojoExecutionException e) {
-        }
-        
-        
-        for ( Iterator it = getArtifacts().iterator(); it.hasNext(); )
-        {
-            Artifact artifact = (Artifact) it.next();
-            Artifact pom = getPomArtifact( artifact );
+        Artifact[] artifacts = getArtifactsAndPoms();
+        Digest[][] sums = checksumArtifacts(artifacts);
 
-            modified |= generateArtifact(checksums, pom);
-            modified |= generateArtifact(checksums, artifact);
+        for (int j = 0; j < getChecksumAlgorithms().length; j++) {
+            File checksumFile = getChecksumFile(j);
+            Map checksums = new LinkedHashMap();
             
+            boolean modified=true;
+            if( isIndexed() ) {
+                checksums = openChecksumIndex(j, true);
+            } else {
+                try { 
+                    checksums = loadChecksums(checksumFile);
+                    modified=false;
+                } catch ( MojoExecutionException e) {
+                }
+            }
+            
+            try {
+                for (int i = 0; i < artifacts.length; i++) {
+                    modified |= generateArtifact(checksums, artifacts[i], sums[i][j]);
+                }
+                
+                if( isIndexed() ) {
+                    if( exportChecksumIndex ) {
+                        storeChecksums(checksumFile, checksums);
+                    }
+                } else if( modified ) {
+                    storeChecksums(checksumFile, checksums);
+                }
+            } finally {
+                closeChecksumIndexes(new Map[] {checksums});
+            }
         }
-        
-        if( modified ) {
-            storeChecksums(checksums);
+    }
+
+    private boolean isIndexed() {
+        return "indexed".equals(checksumFormat);
+    }
+
+    protected File getChecksumIndexFile(int algorithm) {
+        return new File(getChecksumFile(algorithm).getPath() + ".idx");
+    }
+
+    /**
+     * Opens the index of a checksum file, (re)building it if the text file is newer.
+     * 
+     * @param algorithm the index of the checksum algorithm
+     * @param write will checksums be put in the index?  If so, an empty index is created
+     *        if there is neither an index nor a text file.  If not, the index is opened
+     *        read only, and the checksums of the text file are returned if the index
+     *        has to be rebuilt but can't be written, e.g. in a read only checkout.
+     * @return the index, or the checksums of the text file
+     */
+    protected Map openChecksumIndex(int algorithm, boolean write) throws MojoExecutionException {
+        File text = getChecksumFile(algorithm);
+        File index = getChecksumIndexFile(algorithm);
+        try {
+            if (index.exists() && (!text.exists() || text.lastModified() <= index.lastModified())) {
+                return ChecksumIndex.open(index, !write);
+            }
+            if (!text.exists() && write) {
+                return ChecksumIndex.create(index, new LinkedHashMap());
+            }
+            LinkedHashMap checksums = loadChecksums(text);
+            if (index.exists()) {
+                mergeChecksumIndex(index, checksums);
+            }
+            getLog().info("Building checksum index " + index);
+            try {
+                return ChecksumIndex.create(index, checksums);
+            } catch (IOException e) {
+                if (write) {
+                    throw e;
+                }
+                getLog().warn("Could not rebuild checksum index " + index + ", using " + text + ": " + e.getMessage());
+                return checksums;
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not open checksum index: "+index, e);
         }
     }
 
-    private Set getArtifacts() {
-        HashSet rc = new HashSet();
+    /**
+     * Adds the entries of an out of date index which are missing from the
+     * checksums of the text file, i.e. the ones only appended to the index.
+     */
+    private void mergeChecksumIndex(File index, Map checksums) {
+        try {
+            ChecksumIndex previous = ChecksumIndex.open(index, true);
+            try {
+                int merged = 0;
+                for (Iterator it = previous.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry entry = (Map.Entry) it.next();
+                    if (!checksums.containsKey(entry.getKey())) {
+                        checksums.put(entry.getKey(), entry.getValue());
+                        merged++;
+                    }
+                }
+                getLog().debug("Kept " + merged + " entries only found in checksum index " + index);
+            } finally {
+                previous.close();
+            }
+        } catch (IOException e) {
+            getLog().warn("Could not read checksum index " + index + ", rebuilding it: " + e.getMessage());
+        }
+    }
+
+    private void closeChecksumIndexes(Map[] checksums) {
+        for (int j = 0; j < checksums.length; j++) {
+            if (checksums[j] instanceof ChecksumIndex) {
+                try {
+                    ((ChecksumIndex) checksums[j]).close();
+                } catch (IOException e) {
+                    getLog().warn("Could not close checksum index: "+getChecksumIndexFile(j), e);
+                }
+            }
+        }
+    }
+
+    private Collection getArtifacts() {
+        // sorted, so that results are always reported in the same order
+        TreeMap rc = new TreeMap();
         if( includeDependencyArtifacts ) { 
-            rc.addAll(project.getDependencyArtifacts());
+            addArtifacts(rc, project.getDependencyArtifacts());
+        }
+        if( includeTransitiveArtifacts ) { 
+            addArtifacts(rc, project.getArtifacts());
         }
         if( includePluginArtifacts ) { 
-            rc.addAll(project.getPluginArtifacts());
+            addArtifacts(rc, project.getPluginArtifacts());
         }
         if( includeReportArtifacts ) { 
-            rc.addAll(project.getReportArtifacts());
+            addArtifacts(rc, project.getReportArtifacts());
+        }
+        return rc.values();
+    }
+
+    /**
+     * Adds artifacts by id.  Artifacts themselves are not compared, as
+     * that fails for an artifact whose version is still a range.
+     */
+    protected static void addArtifacts(Map artifacts, Collection add) {
+        for (Iterator it = add.iterator(); it.hasNext();) {
+            Artifact artifact = (Artifact) it.next();
+            String version = artifact.getVersion() != null ? artifact.getVersion() : String.valueOf(artifact.getVersionRange());
+            String id = artifact.getDependencyConflictId() + ":" + version;
+            if (!artifacts.containsKey(id)) {
+                artifacts.put(id, artifact);
+            }
+        }
+    }
+
+    /**
+     * Returns the artifacts to check, each one preceded by its pom.
+     * Artifacts and poms with the same id are only returned once.
+     */
+    private Artifact[] getArtifactsAndPoms() {
+        Collection artifacts = getArtifacts();
+        Set ids = new HashSet();
+        List rc = new ArrayList(artifacts.size() * 2);
+        int unresolved = 0;
+        for (Iterator it = artifacts.iterator(); it.hasNext();) {
+            Artifact artifact = (Artifact) it.next();
+            Artifact pom = getPomArtifact(artifact);
+            if (ids.add(pom.getId())) {
+                rc.add(pom);
+                if (!getLocalFile(pom).exists()) {
+                    unresolved++;
+                }
+            }
+            if (ids.add(artifact.getId())) {
+                if (artifact.isResolved()) {
+                    rc.add(artifact);
+                } else {
+                    Artifact copy = copyArtifact(artifact);
+                    rc.add(copy);
+                    if (copy.getVersion() == null || !getLocalFile(copy).exists()) {
+                        unresolved++;
+                    }
+                }
+            }
         }
+        // artifacts are resolved one at a time, as the artifact resolver is not thread safe
+        getLog().debug(unresolved + " of " + rc.size() + " unique artifacts and poms left to download");
+        return (Artifact[]) rc.toArray(new Artifact[rc.size()]);
+    }
+
+    /**
+     * Creates an unresolved copy of a project artifact, so that resolving
+     * it does not modify the artifacts of the project.  The copy keeps the
+     * version range of the artifact if no version was selected from it yet.
+     */
+    private Artifact copyArtifact(Artifact artifact) {
+        VersionRange range = artifact.getVersion() != null
+            ? VersionRange.createFromVersion(artifact.getBaseVersion()) : artifact.getVersionRange();
+        return artifactFactory.createDependencyArtifact(artifact.getGroupId(), artifact.getArtifactId(), 
+                range, artifact.getType(), artifact.getClassifier(), artifact.getScope());
+    }
+
+    /**
+     * Returns the file of an artifact in the local repository.
+     */
+    private File getLocalFile(Artifact artifact) {
+        return new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+    }
+
+    /**
+     * Resolves and checksums the artifacts.
+     * 
+     * @param artifacts
+     * @return the checksums of every artifact, in the same order as the artifacts
+     */
+    private Digest[][] checksumArtifacts(Artifact[] artifacts) throws MojoExecutionException {
+        final Digest[][] rc = new Digest[artifacts.length][];
+        createPipeline(artifacts.length, false).run(artifacts.length, new ArtifactStages(artifacts) {
+            public boolean compare(int index, Digest[] sums) {
+                rc[index] = sums;
+                setVerdict(index, ValidationReport.HASHED);
+                return false;
+            }
+        });
         return rc;
     }
 
+    private ChecksumPipeline createPipeline(int count, boolean stopOnFailure) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        getLog().debug("Computing " + count + " checksums using " + poolSize + " checksum threads");
+        // the artifact resolver is not thread safe, so artifacts are resolved one at a time
+        return new ChecksumPipeline(1, poolSize, poolSize * 2, stopOnFailure);
+    }
+
+    /**
+     * Resolves and checksums the artifacts in a {@link ChecksumPipeline}.
+     */
+    private abstract class ArtifactStages implements ChecksumPipeline.Stages {
+        private final Artifact[] artifacts;
+        private final ValidationReport.Entry[] entries;
+
+        ArtifactStages(Artifact[] artifacts) {
+            this.artifacts = artifacts;
+            this.entries = new ValidationReport.Entry[artifacts.length];
+            if (report != null) {
+                for (int i = 0; i < artifacts.length; i++) {
+                    entries[i] = report.addEntry(key(artifacts[i]));
+                }
+            }
+        }
+
+        public File resolve(int index) throws MojoExecutionException {
+            long start = System.nanoTime();
+            File file = ChecksumValidatorMojo.this.resolve(artifacts[index]);
+            if (entries[index] != null) {
+                entries[index].setResolveTime(System.nanoTime() - start);
+                entries[index].setFile(file);
+            }
+            return file;
+        }
+
+        public Digest[] checksum(int index, File file) throws MojoExecutionException {
+            long start = System.nanoTime();
+            Digest[] rc = ChecksumValidatorMojo.this.checksum(file, entries[index]);
+            if (entries[index] != null) {
+                entries[index].setHashTime(System.nanoTime() - start);
+            }
+            return rc;
+        }
+
+        protected void setVerdict(int index, String verdict) {
+            if (entries[index] != null) {
+                entries[index].setVerdict(verdict);
+            }
+        }
+    }
+
     /**
      * 
      * @param checksums
      * @param artifact
+     * @param sum the checksum of the artifact
      * @return true if this method modified the checksums
      * @throws MojoExecutionException
      */
-    private boolean generateArtifact(HashMap checksums, Artifact artifact) throws MojoExecutionException {
-        File file = resolve(artifact);
-        String sum = checksum(file);
-        List sums = (List)checksums.get(key(artifact));
+    private boolean generateArtifact(Map checksums, Artifact artifact, Digest sum) throws MojoExecutionException {
+        String key = key(artifact);
+        Checksums sums = (Checksums)checksums.get(key);
         if( sums == null ) {
-            sums = (List)checksums.get(keyAnyVersion(artifact));
+            key = keyAnyVersion(artifact);
+            sums = (Checksums)checksums.get(key);
         }
         if( sums == null ) {
-            sums = new ArrayList();
+            sums = new Checksums();
             sums.add(sum);
             checksums.put(key(artifact), sums);
             return true;
         } else {
-            if ( !sums.contains(sum) && !sums.contains("*") ) {
+            if ( !sums.contains(sum) && !sums.isWildcard() ) {
                 sums.add(sum);
+                // the list may be a copy, e.g. when it comes from an index
+                checksums.put(key, sums);
                 return true;
             }
         }
@@ -348,7 +1107,7 @@ public class ChecksumValidatorMojo extends AbstractMojo {
     }
 
     
-    protected LinkedHashMap loadChecksums() throws MojoExecutionException {
+    protected LinkedHashMap loadChecksums(File checksums) throws MojoExecutionException {
         LinkedHashMap rc = new LinkedHashMap();
         
         if( !checksums.canRead() ) {
@@ -363,13 +1122,7 @@ public class ChecksumValidatorMojo extends AbstractMojo {
             while ((line = reader.readNext()) != null) {
                 if( line.length > 0 ) {
                     String key = line[0].trim();
-                    List values = new ArrayList(2);
-                    if( line.length > 1 ) {
-                        String[] t = line[1].split("\\|");
-                        for (int j = 0; j < t.length; j++) {
-                            values.add(t[j].toLowerCase().trim());
-                        }
-                    }
+                    Checksums values = line.length > 1 ? Checksums.parse(line[1]) : new Checksums();
                     rc.put(key, values);
                 }
             }
@@ -386,12 +1139,12 @@ public class ChecksumValidatorMojo extends AbstractMojo {
         return rc;
     }
     
-    private void storeChecksums(LinkedHashMap checksums) throws MojoExecutionException {
+    protected void storeChecksums(File checksumFile, Map checksums) throws MojoExecutionException {
         // Store it.
         FileOutputStream os=null;
         try {
-            boolean exists = this.checksums.exists();
-            os = new FileOutputStream(this.checksums);
+            boolean exists = checksumFile.exists();
+            os = new FileOutputStream(checksumFile);
             CSVWriter writer = new CSVWriter(new OutputStreamWriter(os, "UTF-8"), '=', CSVWriter.NO_QUOTE_CHARACTER);
 
             if( !exists ) {
@@ -404,16 +1157,8 @@ public class ChecksumValidatorMojo extends AbstractMojo {
             
             for (Iterator iterator = checksums.entrySet().iterator(); iterator.hasNext();) {
                 Map.Entry i = (Map.Entry)iterator.next();            
-                StringBuffer b = new StringBuffer();
-                for (Iterator iterator2 = ((List)i.getValue()).iterator(); iterator2.hasNext();) {
-                    String s = (String)iterator2.next();            
-                    if( b.length()!=0 ) {
-                        b.append("|");
-                    }
-                    b.append(s);
-                }
                 String key = (String)i.getKey();
-                String value = b.toString();
+                String value = ((Checksums)i.getValue()).format();
                 if( value.length()!=0 ) {
                     writer.writeNext(new String[]{key,value});
                 } else { 
@@ -422,7 +1167,7 @@ public class ChecksumValidatorMojo extends AbstractMojo {
             }
             writer.close();
         } catch (Throwable e) {
-            throw new MojoExecutionException("Could not write: "+this.checksums);
+            throw new MojoExecutionException("Could not write: "+checksumFile);
         } finally {
             try {
                 os.close();
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The checksums accepted for an artifact.
+ *
+ * Checksums are held as {@link Digest}s in a hash set, so that checking
+ * a computed digest does not allocate anything.  The '*' wild card and
+ * values that are not hex strings are kept as is, so that the checksums
+ * are written back exactly as they were read.
+ */
+public class Checksums {
+
+    public static final String WILDCARD = "*";
+
+    private final List values = new ArrayList(2);
+    private final Set digests = new HashSet(4);
+    private boolean wildcard;
+
+    public Checksums() {
+    }
+
+    /**
+     * @param value the '|' separated checksums, as found in the checksums file
+     */
+    public static Checksums parse(String value) {
+        Checksums rc = new Checksums();
+        String[] t = value.split("\\|");
+        for (int j = 0; j < t.length; j++) {
+            rc.add(t[j].toLowerCase().trim());
+        }
+        return rc;
+    }
+
+    public void add(String value) {
+        Digest digest = WILDCARD.equals(value) ? null : Digest.parse(value);
+        if (digest != null) {
+            add(digest);
+        } else {
+            values.add(value);
+            wildcard |= WILDCARD.equals(value);
+        }
+    }
+
+    public void add(Digest digest) {
+        values.add(digest);
+        digests.add(digest);
+    }
+
+    public boolean contains(Digest digest) {
+        return digests.contains(digest);
+    }
+
+    public boolean isWildcard() {
+        return wildcard;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * @return the checksums in the order they were added: {@link Digest}s, or
+     *         strings for the wild card and values that are not hex strings
+     */
+    public List getValues() {
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return the checksums in the format of the checksums file
+     */
+    public String format() {
+        StringBuffer b = new StringBuffer();
+        for (Iterator it = values.iterator(); it.hasNext();) {
+            if (b.length() != 0) {
+                b.append("|");
+            }
+            b.append(it.next());
+        }
+        return b.toString();
+    }
+
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof Checksums && values.equals(((Checksums) o).values);
+    }
+
+    public String toString() {
+        return values.toString();
+    }
+
+}
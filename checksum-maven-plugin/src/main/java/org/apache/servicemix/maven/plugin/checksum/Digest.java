@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.util.Arrays;
+
+/**
+ * The raw bytes of a checksum.
+ *
+ * Digests are compared byte by byte; they are only converted to hex
+ * when they get written or reported.
+ */
+public final class Digest {
+
+    private final byte[] bytes;
+    private final int hash;
+
+    public Digest(byte[] bytes) {
+        this.bytes = bytes;
+        // digests are evenly distributed, so the first bytes make a good hash
+        int h = 0;
+        for (int i = 0; i < 4 && i < bytes.length; i++) {
+            h = (h << 8) | (bytes[i] & 0xff);
+        }
+        this.hash = h ^ bytes.length;
+    }
+
+    /**
+     * @return the digest for a lower or upper case hex string, or null if it is not one
+     */
+    public static Digest parse(String hex) {
+        if (hex == null || hex.length() == 0 || hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] rc = new byte[hex.length() / 2];
+        for (int i = 0; i < rc.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            rc[i] = (byte) ((high << 4) | low);
+        }
+        return new Digest(rc);
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Digest)) {
+            return false;
+        }
+        Digest other = (Digest) o;
+        return hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    /**
+     * @return the lower case hex representation of the digest
+     */
+    public String toString() {
+        return ChecksumValidatorMojo.toString(bytes);
+    }
+
+}
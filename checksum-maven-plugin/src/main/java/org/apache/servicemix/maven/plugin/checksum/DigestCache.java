@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An on-disk cache of file digests.
+ *
+ * Entries are keyed by algorithm and absolute path, and are only
+ * returned while the length and last modified time of the file
+ * still match the ones recorded when the digest was computed.  Entries
+ * of files that were changed or removed are dropped when the cache is
+ * stored.
+ *
+ * Instances are safe to use from several threads.
+ */
+public class DigestCache {
+
+    private final File file;
+    private final Properties entries = new Properties();
+    private boolean modified;
+
+    public DigestCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the cache file, if it exists.  An unreadable cache file
+     * is treated as an empty cache.
+     */
+    public synchronized void load() {
+        entries.clear();
+        modified = false;
+        if (!file.canRead()) {
+            return;
+        }
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            entries.load(is);
+        } catch (IOException e) {
+            entries.clear();
+        } finally {
+            try {
+                is.close();
+            } catch (Throwable e) {
+            }
+        }
+    }
+
+    /**
+     * Writes the cache file if any entry changed since it was loaded,
+     * or if stale entries were pruned.
+     */
+    public synchronized void store() throws IOException {
+        prune();
+        if (!modified) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        // a unique name, so that concurrent builds do not write to the same file
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(tmp);
+            entries.store(os, "Cached digests: algorithm:path=length,lastModified,digest");
+        } finally {
+            try {
+                os.close();
+            } catch (Throwable e) {
+            }
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+        modified = false;
+    }
+
+    /**
+     * Removes the entries of files that no longer exist or changed since
+     * their digest was computed.
+     */
+    private void prune() {
+        for (Iterator it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry entry = (Map.Entry) it.next();
+            String key = (String) entry.getKey();
+            File target = new File(key.substring(key.indexOf(':') + 1));
+            if (!matches((String) entry.getValue(), target)) {
+                it.remove();
+                modified = true;
+            }
+        }
+    }
+
+    /**
+     * @return the cached digest of the file, or null if the file is unknown or changed since
+     */
+    public synchronized String get(String algorithm, File target) {
+        String value = entries.getProperty(key(algorithm, target));
+        if (value == null) {
+            return null;
+        }
+        if (!matches(value, target)) {
+            return null;
+        }
+        return value.substring(value.lastIndexOf(',') + 1);
+    }
+
+    /**
+     * @return true if the length and last modified time of the entry are the ones of the file
+     */
+    private static boolean matches(String value, File target) {
+        String[] t = value.split(",");
+        return t.length == 3 && target.isFile()
+            && t[0].equals(String.valueOf(target.length()))
+            && t[1].equals(String.valueOf(target.lastModified()));
+    }
+
+    public synchronized void put(String algorithm, File target, String digest) {
+        String value = target.length() + "," + target.lastModified() + "," + digest;
+        Object old = entries.setProperty(key(algorithm, target), value);
+        modified |= !value.equals(old);
+    }
+
+    private static String key(String algorithm, File target) {
+        return algorithm + ":" + target.getAbsolutePath();
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Feeds the content of a file into one or more {@link MessageDigest}s,
+ * reading the file only once.
+ *
+ * The following modes are supported:
+ * <ul>
+ *   <li><code>stream</code>: reads the file through a small byte array</li>
+ *   <li><code>channel</code>: reads the file through a large direct buffer</li>
+ *   <li><code>mapped</code>: memory maps the file region by region</li>
+ *   <li><code>auto</code>: uses <code>mapped</code> for files of at least
+ *       the mapped threshold, <code>channel</code> otherwise</li>
+ * </ul>
+ */
+public class FileDigester {
+
+    public static final String STREAM = "stream";
+    public static final String CHANNEL = "channel";
+    public static final String MAPPED = "mapped";
+    public static final String AUTO = "auto";
+
+    static final int STREAM_BUFFER_SIZE = 1024 * 4;
+    static final int CHANNEL_BUFFER_SIZE = 1024 * 256;
+    static final long MAPPED_REGION_SIZE = 1024 * 1024 * 64;
+
+    // direct buffers are expensive to allocate, so every thread keeps its own
+    private static final ThreadLocal BUFFERS = new ThreadLocal() {
+        protected Object initialValue() {
+            return ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        }
+    };
+
+    private final String mode;
+    private final long mappedThreshold;
+
+    /**
+     * @param mode one of <code>stream</code>, <code>channel</code>, <code>mapped</code> or <code>auto</code>
+     * @param mappedThreshold the minimum file size for which <code>auto</code> memory maps the file
+     * @throws IllegalArgumentException if the mode is unknown
+     */
+    public FileDigester(String mode, long mappedThreshold) {
+        if (!STREAM.equals(mode) && !CHANNEL.equals(mode) && !MAPPED.equals(mode) && !AUTO.equals(mode)) {
+            throw new IllegalArgumentException("Invalid digest mode: " + mode);
+        }
+        this.mode = mode;
+        this.mappedThreshold = mappedThreshold;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void update(File file, MessageDigest md) throws IOException {
+        update(file, new MessageDigest[] {md});
+    }
+
+    public void update(File file, MessageDigest[] mds) throws IOException {
+        String m = mode;
+        if (AUTO.equals(m)) {
+            m = file.length() >= mappedThreshold ? MAPPED : CHANNEL;
+        }
+        FileInputStream is = new FileInputStream(file);
+        try {
+            if (STREAM.equals(m)) {
+                updateFromStream(is, mds);
+            } else if (CHANNEL.equals(m)) {
+                updateFromChannel(is.getChannel(), mds);
+            } else {
+                updateFromMapping(is.getChannel(), mds);
+            }
+        } finally {
+            try {
+                is.close();
+            } catch (Throwable e) {
+            }
+        }
+    }
+
+    private static void updateFromStream(FileInputStream is, MessageDigest[] mds) throws IOException {
+        byte buffer[] = new byte[STREAM_BUFFER_SIZE];
+        int c;
+        while ((c = is.read(buffer)) >= 0) {
+            for (int i = 0; i < mds.length; i++) {
+                mds[i].update(buffer, 0, c);
+            }
+        }
+    }
+
+    private static void updateFromChannel(FileChannel channel, MessageDigest[] mds) throws IOException {
+        ByteBuffer buffer = (ByteBuffer) BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            update(buffer, mds);
+            buffer.clear();
+        }
+    }
+
+    private static void updateFromMapping(FileChannel channel, MessageDigest[] mds) throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+            long length = Math.min(MAPPED_REGION_SIZE, size - position);
+            update(channel.map(FileChannel.MapMode.READ_ONLY, position, length), mds);
+        }
+    }
+
+    private static void update(ByteBuffer buffer, MessageDigest[] mds) {
+        // every digest consumes the buffer, so rewind it in between
+        int start = buffer.position();
+        for (int i = 0; i < mds.length; i++) {
+            buffer.position(start);
+            mds[i].update(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * A single value that changes whenever one of the inputs of a
+ * validation changes.
+ *
+ * Files are either identified by their length and last modified time,
+ * which is cheap, or by their content.  Both are hashed separately and
+ * then combined, so the order of the calls only matters within each
+ * kind of input.
+ */
+public class Fingerprint {
+
+    private final MessageDigest files;
+    private final MessageDigest contents;
+
+    public Fingerprint() {
+        try {
+            files = MessageDigest.getInstance("SHA-1");
+            contents = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported");
+        }
+    }
+
+    /**
+     * Adds a value, such as a configuration setting.
+     */
+    public void add(String value) {
+        update(files, value);
+    }
+
+    /**
+     * Adds a file, identified by a key and its length and last modified time.
+     */
+    public void addFile(String key, File file) {
+        update(files, key + "\u0000" + file.length() + "\u0000" + file.lastModified());
+    }
+
+    /**
+     * Adds the content of a file, or a marker if it does not exist.
+     */
+    public void addContent(File file) throws IOException {
+        update(contents, file.getName());
+        if (!file.exists()) {
+            update(contents, "<missing>");
+            return;
+        }
+        InputStream is = new FileInputStream(file);
+        try {
+            byte buffer[] = new byte[1024*4];
+            int c;
+            while ((c = is.read(buffer)) >= 0) {
+                contents.update(buffer, 0, c);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return the fingerprint of everything added so far
+     */
+    public String getValue() {
+        try {
+            MessageDigest root = (MessageDigest) files.clone();
+            byte[] left = root.digest();
+            byte[] right = ((MessageDigest) contents.clone()).digest();
+            root.reset();
+            root.update(left);
+            root.update(right);
+            return ChecksumValidatorMojo.toString(root.digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-1 digests cannot be cloned");
+        }
+    }
+
+    /**
+     * @return the fingerprint stored in the file, or null if there is none
+     *         or it is older than the given age
+     */
+    public static String load(File file, long maxAge) {
+        if (!file.canRead()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            properties.load(is);
+            long timestamp = Long.parseLong(properties.getProperty("timestamp", "0"));
+            if (maxAge > 0 && System.currentTimeMillis() - timestamp > maxAge) {
+                return null;
+            }
+            return properties.getProperty("fingerprint");
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            try {
+                is.close();
+            } catch (Throwable e) {
+            }
+        }
+    }
+
+    public static void store(File file, String fingerprint) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        properties.setProperty("timestamp", String.valueOf(System.currentTimeMillis()));
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        OutputStream os = new FileOutputStream(file);
+        try {
+            properties.store(os, "Fingerprint of the last successful checksum validation");
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void update(MessageDigest md, String value) {
+        try {
+            md.update(value.getBytes("UTF-8"));
+            md.update((byte) 0);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+}
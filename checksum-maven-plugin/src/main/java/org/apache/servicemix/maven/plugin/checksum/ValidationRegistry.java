@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the checksums computed and the artifacts validated during
+ * a build, so that the other modules of the reactor can reuse them.
+ *
+ * There is one registry per build session; it goes away with the session.
+ * Instances are safe to use from several threads.
+ */
+public class ValidationRegistry {
+
+    private static final Map REGISTRIES = new WeakHashMap();
+
+    private final Map digests = new HashMap();
+    private final Set validated = new HashSet();
+
+    /**
+     * @return the registry for the given build session
+     */
+    public static ValidationRegistry getInstance(Object session) {
+        synchronized (REGISTRIES) {
+            ValidationRegistry rc = (ValidationRegistry) REGISTRIES.get(session);
+            if (rc == null) {
+                rc = new ValidationRegistry();
+                REGISTRIES.put(session, rc);
+            }
+            return rc;
+        }
+    }
+
+    /**
+     * @return the digest computed earlier in this build, or null if the file is unknown or changed since
+     */
+    public synchronized Digest getDigest(String algorithm, File file) {
+        return (Digest) digests.get(digestKey(algorithm, file));
+    }
+
+    public synchronized void putDigest(String algorithm, File file, Digest digest) {
+        digests.put(digestKey(algorithm, file), digest);
+    }
+
+    /**
+     * @return true if the artifact was successfully validated against the same checksum file earlier in this build
+     */
+    public synchronized boolean isValidated(File checksumFile, String artifact) {
+        return validated.contains(validationKey(checksumFile, artifact));
+    }
+
+    public synchronized void setValidated(File checksumFile, String artifact) {
+        validated.add(validationKey(checksumFile, artifact));
+    }
+
+    private static String digestKey(String algorithm, File file) {
+        return algorithm + ":" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    private static String validationKey(File checksumFile, String artifact) {
+        // a checksum file that changed in the meantime invalidates the earlier validations
+        return checksumFile.getAbsolutePath() + ":" + checksumFile.length() + ":" + checksumFile.lastModified()
+            + ":" + artifact;
+    }
+
+}
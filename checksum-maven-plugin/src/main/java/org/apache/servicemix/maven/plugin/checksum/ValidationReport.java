@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the timings of a checksum validation or generation and writes
+ * them as a JSON report.
+ *
+ * Entries are created by the build thread; each stage of the pipeline
+ * only updates the entries of the artifacts it is working on.
+ */
+public class ValidationReport {
+
+    public static final String VALID = "valid";
+    public static final String INVALID = "invalid";
+    public static final String HASHED = "hashed";
+    public static final String SKIPPED = "skipped";
+
+    public static class Entry {
+        private final String artifact;
+        private File file;
+        private long resolveTime = -1;
+        private long hashTime = -1;
+        private long bytesHashed;
+        private boolean cacheHit;
+        private String verdict;
+
+        Entry(String artifact) {
+            this.artifact = artifact;
+        }
+
+        public void setFile(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param resolveTime the resolution time, in nanoseconds
+         */
+        public void setResolveTime(long resolveTime) {
+            this.resolveTime = resolveTime;
+        }
+
+        /**
+         * @param hashTime the time taken to get the checksums, in nanoseconds
+         */
+        public void setHashTime(long hashTime) {
+            this.hashTime = hashTime;
+        }
+
+        /**
+         * @param bytesHashed the number of bytes read from the file to compute its checksums
+         */
+        public void setBytesHashed(long bytesHashed) {
+            this.bytesHashed = bytesHashed;
+        }
+
+        /**
+         * @param cacheHit were all the checksums found without reading the file?
+         */
+        public void setCacheHit(boolean cacheHit) {
+            this.cacheHit = cacheHit;
+        }
+
+        public void setVerdict(String verdict) {
+            this.verdict = verdict;
+        }
+
+        long getLatency() {
+            return Math.max(resolveTime, 0) + Math.max(hashTime, 0);
+        }
+
+        boolean isTimed() {
+            return resolveTime >= 0 || hashTime >= 0;
+        }
+    }
+
+    private final String goal;
+    private final String[] algorithms;
+    private final long start = System.nanoTime();
+    private final List entries = new ArrayList();
+    private boolean upToDate;
+
+    public ValidationReport(String goal, String[] algorithms) {
+        this.goal = goal;
+        this.algorithms = algorithms;
+    }
+
+    public synchronized Entry addEntry(String artifact) {
+        Entry entry = new Entry(artifact);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Records that the validation was skipped, as nothing changed since the last one.
+     */
+    public void setUpToDate(boolean upToDate) {
+        this.upToDate = upToDate;
+    }
+
+    public synchronized void write(File file) throws IOException {
+        long elapsed = System.nanoTime() - start;
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println("{");
+            out.println("  \"goal\": " + quote(goal) + ",");
+            out.print("  \"algorithms\": [");
+            for (int i = 0; i < algorithms.length; i++) {
+                out.print((i > 0 ? ", " : "") + quote(algorithms[i]));
+            }
+            out.println("],");
+            out.println("  \"upToDate\": " + upToDate + ",");
+            writeTotals(out, elapsed);
+            out.println("  \"artifacts\": [");
+            for (int i = 0; i < entries.size(); i++) {
+                writeEntry(out, (Entry) entries.get(i));
+                out.println(i < entries.size() - 1 ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    private void writeTotals(PrintWriter out, long elapsed) {
+        int hits = 0;
+        int misses = 0;
+        int invalid = 0;
+        long bytes = 0;
+        long hashTime = 0;
+        List latencies = new ArrayList();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = (Entry) entries.get(i);
+            if (entry.hashTime >= 0) {
+                if (entry.cacheHit) {
+                    hits++;
+                } else {
+                    misses++;
+                }
+                hashTime += entry.hashTime;
+            }
+            if (INVALID.equals(entry.verdict)) {
+                invalid++;
+            }
+            bytes += entry.bytesHashed;
+            if (entry.isTimed()) {
+                latencies.add(new Long(entry.getLatency()));
+            }
+        }
+        long[] sorted = new long[latencies.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ((Long) latencies.get(i)).longValue();
+        }
+        Arrays.sort(sorted);
+
+        out.println("  \"totals\": {");
+        out.println("    \"artifacts\": " + entries.size() + ",");
+        out.println("    \"invalid\": " + invalid + ",");
+        out.println("    \"cacheHits\": " + hits + ",");
+        out.println("    \"cacheMisses\": " + misses + ",");
+        out.println("    \"bytesHashed\": " + bytes + ",");
+        out.println("    \"elapsedMs\": " + millis(elapsed) + ",");
+        out.println("    \"hashMs\": " + millis(hashTime) + ",");
+        out.println("    \"throughputMBps\": " + megabytesPerSecond(bytes, elapsed) + ",");
+        out.println("    \"hashThroughputMBps\": " + megabytesPerSecond(bytes, hashTime) + ",");
+        out.println("    \"p50LatencyMs\": " + millis(percentile(sorted, 50)) + ",");
+        out.println("    \"p95LatencyMs\": " + millis(percentile(sorted, 95)));
+        out.println("  },");
+    }
+
+    private static void writeEntry(PrintWriter out, Entry entry) {
+        out.print("    {\"artifact\": " + quote(entry.artifact));
+        if (entry.file != null) {
+            out.print(", \"file\": " + quote(entry.file.getPath()));
+        }
+        if (entry.resolveTime >= 0) {
+            out.print(", \"resolveMs\": " + millis(entry.resolveTime));
+        }
+        if (entry.hashTime >= 0) {
+            out.print(", \"bytesHashed\": " + entry.bytesHashed);
+            out.print(", \"hashMs\": " + millis(entry.hashTime));
+            out.print(", \"cache\": " + quote(entry.cacheHit ? "hit" : "miss"));
+        }
+        if (entry.verdict != null) {
+            out.print(", \"verdict\": " + quote(entry.verdict));
+        }
+        out.print("}");
+    }
+
+    /**
+     * @return the nearest-rank percentile of sorted values, or 0 if there are none
+     */
+    static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    static double megabytesPerSecond(long bytes, long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        double rate = (bytes / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+        return Math.round(rate * 10) / 10.0;
+    }
+
+    static String quote(String value) {
+        StringBuffer sb = new StringBuffer(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                String hex = Integer.toHexString(c);
+                sb.append("\\u");
+                for (int j = hex.length(); j < 4; j++) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+}
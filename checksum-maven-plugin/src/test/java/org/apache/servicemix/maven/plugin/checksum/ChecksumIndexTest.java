@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link ChecksumIndex}
+ */
+public class ChecksumIndexTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("checksums", ".txt.idx");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testLookup() throws Exception {
+        ChecksumIndex index = ChecksumIndex.create(file, createChecksums());
+        try {
+            assertEquals(list("1483490805e8f86c21240958629905e733d079eb"), index.get("log4j/log4j/pom/1.2.15"));
+            assertEquals(list("*"), index.get("org.apache.activemq/activemq-core/jar/*"));
+            assertNull(index.get("log4j/log4j/jar/1.2.14"));
+            assertFalse(index.containsKey("zzz"));
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testLosslessConversion() throws Exception {
+        Map checksums = createChecksums();
+        ChecksumIndex index = ChecksumIndex.create(file, checksums);
+        index.close();
+        index = ChecksumIndex.open(file);
+        try {
+            assertEquals(checksums, index);
+            assertEquals(new ArrayList(checksums.keySet()), new ArrayList(index.keySet()));
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testAppendedEntriesSurviveReopening() throws Exception {
+        ChecksumIndex index = ChecksumIndex.create(file, createChecksums());
+        index.put("junit/junit/jar/3.8.2", list("0123456789abcdef0123456789abcdef01234567"));
+        index.put("log4j/log4j/pom/1.2.15", list("1483490805e8f86c21240958629905e733d079eb", "*"));
+        assertEquals(2, index.getLogSize());
+        index.close();
+
+        index = ChecksumIndex.open(file);
+        try {
+            assertEquals(list("0123456789abcdef0123456789abcdef01234567"), index.get("junit/junit/jar/3.8.2"));
+            assertEquals(list("1483490805e8f86c21240958629905e733d079eb", "*"), index.get("log4j/log4j/pom/1.2.15"));
+            // updated entries keep their position, new ones go last
+            Iterator keys = index.keySet().iterator();
+            assertEquals("# comment", keys.next());
+            assertEquals("log4j/log4j/pom/1.2.15", keys.next());
+            index.put("another/one/jar/1.0", list("*"));
+            List all = new ArrayList(index.keySet());
+            assertEquals("junit/junit/jar/3.8.2", all.get(all.size() - 2));
+            assertEquals("another/one/jar/1.0", all.get(all.size() - 1));
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testCompaction() throws Exception {
+        ChecksumIndex index = ChecksumIndex.create(file, createChecksums());
+        index.put("junit/junit/jar/3.8.2", list("*"));
+        Map expected = new LinkedHashMap(index);
+        index.compact();
+        try {
+            assertEquals(0, index.getLogSize());
+            assertEquals(expected, index);
+            assertEquals(list("*"), index.get("junit/junit/jar/3.8.2"));
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testIncompleteAppendIsDropped() throws Exception {
+        ChecksumIndex index = ChecksumIndex.create(file, createChecksums());
+        index.put("junit/junit/jar/3.8.2", list("*"));
+        index.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        index = ChecksumIndex.open(file);
+        try {
+            assertNull(index.get("junit/junit/jar/3.8.2"));
+            assertEquals(createChecksums(), index);
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testMoreThan255Checksums() throws Exception {
+        Checksums values = new Checksums();
+        for (int i = 0; i < 300; i++) {
+            values.add("*");
+        }
+        Map checksums = createChecksums();
+        checksums.put("many/values/jar/1.0", values);
+        ChecksumIndex index = ChecksumIndex.create(file, checksums);
+        index.put("junit/junit/jar/3.8.2", values);
+        index.close();
+        index = ChecksumIndex.open(file);
+        try {
+            assertEquals(300, ((Checksums) index.get("many/values/jar/1.0")).getValues().size());
+            assertEquals(300, ((Checksums) index.get("junit/junit/jar/3.8.2")).getValues().size());
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testVersion1IsUpgraded() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            byte[] key = "junit/junit/jar/3.8.2".getBytes("UTF-8");
+            out.writeInt(ChecksumIndex.MAGIC);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeLong(ChecksumIndex.HEADER_SIZE + 8 + 4 + 2 + key.length + 2);
+            out.writeLong(ChecksumIndex.HEADER_SIZE + 8);
+            out.writeInt(0);
+            out.writeShort(key.length);
+            out.write(key);
+            out.writeByte(1);
+            out.writeByte(ChecksumIndex.WILDCARD);
+        } finally {
+            out.close();
+        }
+        ChecksumIndex index = ChecksumIndex.open(file);
+        index.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(4);
+            assertEquals(ChecksumIndex.VERSION, raf.readInt());
+        } finally {
+            raf.close();
+        }
+        index = ChecksumIndex.open(file);
+        try {
+            assertEquals(list("*"), index.get("junit/junit/jar/3.8.2"));
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testReadOnly() throws Exception {
+        ChecksumIndex index = ChecksumIndex.create(file, createChecksums());
+        index.put("junit/junit/jar/3.8.2", list("*"));
+        index.close();
+        file.setReadOnly();
+        index = ChecksumIndex.open(file, true);
+        try {
+            assertEquals(list("*"), index.get("junit/junit/jar/3.8.2"));
+            index.put("another/one/jar/1.0", list("*"));
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        } finally {
+            index.close();
+        }
+        index = ChecksumIndex.open(file, true);
+        try {
+            assertNull(index.get("another/one/jar/1.0"));
+        } finally {
+            index.close();
+        }
+    }
+
+    private static Map createChecksums() {
+        Map rc = new LinkedHashMap();
+        rc.put("# comment", new Checksums());
+        rc.put("log4j/log4j/pom/1.2.15", list("1483490805e8f86c21240958629905e733d079eb"));
+        rc.put("log4j/log4j/jar/1.2.15", list("f0a0d2e29ed910808c33135a3a5a51bba6358f7b", "g0b0d3e22ed920806c3f1ffa3a5a5cb4a2398ca2"));
+        rc.put("org.apache.activemq/activemq-core/jar/*", list("*"));
+        rc.put("empty/value/jar/1.0", list(""));
+        return rc;
+    }
+
+    private static Checksums list(String s) {
+        return Checksums.parse(s);
+    }
+
+    private static Checksums list(String s1, String s2) {
+        return Checksums.parse(s1 + "|" + s2);
+    }
+}
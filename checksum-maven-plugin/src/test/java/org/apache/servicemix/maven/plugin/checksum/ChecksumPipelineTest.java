@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Test cases for {@link ChecksumPipeline}
+ */
+public class ChecksumPipelineTest extends TestCase {
+
+    private static final int COUNT = 50;
+
+    public void testComparesInItemOrder() throws Exception {
+        RecordingStages stages = new RecordingStages(-1);
+        assertFalse(new ChecksumPipeline(4, false).run(COUNT, stages));
+        assertEquals(COUNT, stages.compared.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(new Integer(i), stages.compared.get(i));
+        }
+    }
+
+    public void testReportsAllFailures() throws Exception {
+        RecordingStages stages = new RecordingStages(3);
+        ChecksumPipeline pipeline = new ChecksumPipeline(4, false);
+        assertTrue(pipeline.run(COUNT, stages));
+        assertEquals(COUNT, pipeline.getCompared());
+    }
+
+    public void testFailFastStopsAtFirstFailure() throws Exception {
+        RecordingStages stages = new RecordingStages(3);
+        ChecksumPipeline pipeline = new ChecksumPipeline(2, true);
+        assertTrue(pipeline.run(COUNT, stages));
+        assertTrue(pipeline.getCompared() < COUNT);
+        assertTrue(stages.compared.contains(new Integer(3)));
+    }
+
+    public void testResolutionErrorIsRethrown() throws Exception {
+        RecordingStages stages = new RecordingStages(-1) {
+            public File resolve(int index) throws MojoExecutionException {
+                if (index == 7) {
+                    throw new MojoExecutionException("Could not resolve 7");
+                }
+                return super.resolve(index);
+            }
+        };
+        try {
+            new ChecksumPipeline(4, false).run(COUNT, stages);
+            fail("Expected a MojoExecutionException");
+        } catch (MojoExecutionException e) {
+            assertEquals("Could not resolve 7", e.getMessage());
+        }
+    }
+
+    public void testErrorsAreReportedAfterAllComparisons() throws Exception {
+        RecordingStages stages = new RecordingStages(-1) {
+            public File resolve(int index) throws MojoExecutionException {
+                if (index == 7 || index == 20) {
+                    throw new MojoExecutionException("Could not resolve " + index);
+                }
+                return super.resolve(index);
+            }
+        };
+        ChecksumPipeline pipeline = new ChecksumPipeline(4, false);
+        try {
+            pipeline.run(COUNT, stages);
+            fail("Expected a MojoExecutionException");
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage().indexOf("Could not resolve 7") >= 0);
+            assertTrue(e.getMessage().indexOf("Could not resolve 20") >= 0);
+        }
+        assertEquals(COUNT - 2, pipeline.getCompared());
+        assertEquals(new Integer(COUNT - 1), stages.compared.get(COUNT - 3));
+    }
+
+    public void testNoItems() throws Exception {
+        assertFalse(new ChecksumPipeline(4, true).run(0, new RecordingStages(-1)));
+    }
+
+    private static class RecordingStages implements ChecksumPipeline.Stages {
+        final List compared = Collections.synchronizedList(new ArrayList());
+        final int failing;
+
+        RecordingStages(int failing) {
+            this.failing = failing;
+        }
+
+        public File resolve(int index) throws MojoExecutionException {
+            // make later items resolve faster, so they arrive out of order
+            sleep((COUNT - index) % 5);
+            return new File("item-" + index);
+        }
+
+        public Digest[] checksum(int index, File file) throws MojoExecutionException {
+            sleep(index % 3);
+            return new Digest[] {Digest.parse(Integer.toHexString(0x1000 + index))};
+        }
+
+        public boolean compare(int index, Digest[] sums) {
+            assertEquals(Digest.parse(Integer.toHexString(0x1000 + index)), sums[0]);
+            compared.add(new Integer(index));
+            return index == failing;
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Test cases for {@link ChecksumValidatorMojo}
+ */
+public class ChecksumValidatorMojoTest extends TestCase {
+
+    private static final String SHA1 = "f0a0d2e29ed910808c33135a3a5a51bba6358f7b";
+
+    private File sidecar;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        sidecar = File.createTempFile("log4j-1.2.15", ".jar.sha1");
+    }
+
+    protected void tearDown() throws Exception {
+        sidecar.delete();
+        super.tearDown();
+    }
+
+    public void testGetSidecarFile() throws Exception {
+        File jar = new File("log4j-1.2.15.jar");
+        assertEquals(new File("log4j-1.2.15.jar.sha1"), ChecksumValidatorMojo.getSidecarFile(jar, "SHA-1"));
+        assertEquals(new File("log4j-1.2.15.jar.md5"), ChecksumValidatorMojo.getSidecarFile(jar, "MD5"));
+    }
+
+    public void testReadSidecar() throws Exception {
+        write(sidecar, SHA1.toUpperCase() + "\n");
+        assertEquals(SHA1, ChecksumValidatorMojo.readSidecar(sidecar, "SHA-1"));
+    }
+
+    public void testReadSidecarWithFileName() throws Exception {
+        write(sidecar, SHA1 + "  log4j-1.2.15.jar\n");
+        assertEquals(SHA1, ChecksumValidatorMojo.readSidecar(sidecar, "SHA-1"));
+    }
+
+    public void testReadInvalidSidecar() throws Exception {
+        write(sidecar, "<html>Not found</html>");
+        assertNull(ChecksumValidatorMojo.readSidecar(sidecar, "SHA-1"));
+        write(sidecar, SHA1);
+        assertNull(ChecksumValidatorMojo.readSidecar(sidecar, "MD5"));
+        sidecar.delete();
+        assertNull(ChecksumValidatorMojo.readSidecar(sidecar, "SHA-1"));
+    }
+
+    public void testAddArtifactsWithoutVersion() throws Exception {
+        Artifact ranged = artifact("org.apache.test:ranged:jar", null);
+        Artifact jar = artifact("org.apache.test:test:jar", "1.0");
+        Artifact sources = artifact("org.apache.test:test:jar:sources", "1.0");
+        Map artifacts = new TreeMap();
+        ChecksumValidatorMojo.addArtifacts(artifacts, Arrays.asList(new Artifact[] {jar, ranged, sources}));
+        ChecksumValidatorMojo.addArtifacts(artifacts, Arrays.asList(new Artifact[] {jar}));
+        assertEquals(Arrays.asList(new Artifact[] {ranged, jar, sources}), new ArrayList(artifacts.values()));
+    }
+
+    public void testIndexRebuiltFromNewerTextKeepsAppendedEntries() throws Exception {
+        File text = File.createTempFile("checksums", ".txt");
+        File index = new File(text.getPath() + ".idx");
+        try {
+            write(text, "log4j/log4j/jar/1.2.15=" + SHA1 + "\n");
+            ChecksumValidatorMojo mojo = new ChecksumValidatorMojo();
+            mojo.checksums = text;
+            Map checksums = mojo.openChecksumIndex(0, true);
+            checksums.put("junit/junit/jar/3.8.2", Checksums.parse("*"));
+            ((ChecksumIndex) checksums).close();
+
+            write(text, "log4j/log4j/jar/1.2.15=*\n");
+            text.setLastModified(index.lastModified() + 2000);
+            checksums = mojo.openChecksumIndex(0, false);
+            try {
+                assertEquals(Checksums.parse("*"), checksums.get("log4j/log4j/jar/1.2.15"));
+                assertEquals(Checksums.parse("*"), checksums.get("junit/junit/jar/3.8.2"));
+            } finally {
+                ((ChecksumIndex) checksums).close();
+            }
+        } finally {
+            text.delete();
+            index.delete();
+        }
+    }
+
+    /**
+     * Creates an artifact that, like DefaultArtifact without a version, cannot be compared.
+     */
+    private static Artifact artifact(String conflictId, String version) {
+        final Map values = new HashMap();
+        values.put("getDependencyConflictId", conflictId);
+        values.put("getVersion", version);
+        values.put("getVersionRange", null);
+        return (Artifact) Proxy.newProxyInstance(Artifact.class.getClassLoader(), new Class[] {Artifact.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (values.containsKey(method.getName())) {
+                    return values.get(method.getName());
+                } else if (method.getName().equals("equals")) {
+                    return Boolean.valueOf(proxy == args[0]);
+                } else if (method.getName().equals("hashCode")) {
+                    return new Integer(System.identityHashCode(proxy));
+                }
+                throw new NullPointerException(method.getName());
+            }
+        });
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link Checksums}
+ */
+public class ChecksumsTest extends TestCase {
+
+    private static final String SHA1 = "f0a0d2e29ed910808c33135a3a5a51bba6358f7b";
+
+    public void testContains() throws Exception {
+        Checksums checksums = Checksums.parse(SHA1.toUpperCase() + " | 1483490805e8f86c21240958629905e733d079eb");
+        assertTrue(checksums.contains(Digest.parse(SHA1)));
+        assertFalse(checksums.contains(Digest.parse("0000d2e29ed910808c33135a3a5a51bba6358f7b")));
+        assertFalse(checksums.isWildcard());
+    }
+
+    public void testWildcard() throws Exception {
+        Checksums checksums = Checksums.parse(SHA1 + "|*");
+        assertTrue(checksums.isWildcard());
+        assertEquals(SHA1 + "|*", checksums.format());
+    }
+
+    public void testValuesAreWrittenBackAsRead() throws Exception {
+        String value = SHA1 + "|g0b0d3e22ed920806c3f1ffa3a5a5cb4a2398ca2|*";
+        assertEquals(value, Checksums.parse(value).format());
+        assertEquals("", Checksums.parse("").format());
+        assertEquals("[" + SHA1 + ", *]", Checksums.parse(SHA1 + "|*").toString());
+    }
+
+    public void testDigest() throws Exception {
+        assertEquals(SHA1, Digest.parse(SHA1).toString());
+        assertEquals(Digest.parse(SHA1), Digest.parse(SHA1.toUpperCase()));
+        assertEquals(Digest.parse(SHA1).hashCode(), Digest.parse(SHA1.toUpperCase()).hashCode());
+        assertNull(Digest.parse("g0"));
+        assertNull(Digest.parse("abc"));
+        assertNull(Digest.parse(""));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link DigestCache}
+ */
+public class DigestCacheTest extends TestCase {
+
+    private File data;
+    private File cacheFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        data = File.createTempFile("digest-cache", ".jar");
+        cacheFile = File.createTempFile("digest-cache", ".properties");
+        cacheFile.delete();
+        write(data, "some content");
+    }
+
+    protected void tearDown() throws Exception {
+        data.delete();
+        cacheFile.delete();
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        DigestCache cache = new DigestCache(cacheFile);
+        cache.load();
+        assertNull(cache.get("SHA-1", data));
+        cache.put("SHA-1", data, "abcdef");
+        cache.store();
+
+        cache = new DigestCache(cacheFile);
+        cache.load();
+        assertEquals("abcdef", cache.get("SHA-1", data));
+        assertNull(cache.get("MD5", data));
+    }
+
+    public void testChangedFileIsNotReturned() throws Exception {
+        DigestCache cache = new DigestCache(cacheFile);
+        cache.put("SHA-1", data, "abcdef");
+        write(data, "some other, longer content");
+        assertNull(cache.get("SHA-1", data));
+    }
+
+    public void testUnchangedCacheIsNotWritten() throws Exception {
+        DigestCache cache = new DigestCache(cacheFile);
+        cache.load();
+        cache.store();
+        assertFalse(cacheFile.exists());
+    }
+
+    public void testStaleEntriesArePruned() throws Exception {
+        File other = File.createTempFile("digest-cache", ".jar");
+        try {
+            write(other, "other content");
+            DigestCache cache = new DigestCache(cacheFile);
+            cache.put("SHA-1", data, "abcdef");
+            cache.put("SHA-1", other, "012345");
+            cache.store();
+        } finally {
+            other.delete();
+        }
+        write(data, "some other, longer content");
+
+        DigestCache cache = new DigestCache(cacheFile);
+        cache.load();
+        cache.store();
+        Properties entries = new Properties();
+        FileInputStream is = new FileInputStream(cacheFile);
+        try {
+            entries.load(is);
+        } finally {
+            is.close();
+        }
+        assertTrue(entries.isEmpty());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link FileDigester}
+ */
+public class FileDigesterTest extends TestCase {
+
+    private File data;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        data = File.createTempFile("file-digester", ".jar");
+        byte[] content = new byte[FileDigester.CHANNEL_BUFFER_SIZE * 3 + 17];
+        new Random(42).nextBytes(content);
+        FileOutputStream os = new FileOutputStream(data);
+        try {
+            os.write(content);
+        } finally {
+            os.close();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        data.delete();
+        super.tearDown();
+    }
+
+    public void testAllModesComputeTheSameDigest() throws Exception {
+        String expected = digest(FileDigester.STREAM, Long.MAX_VALUE);
+        assertEquals(expected, digest(FileDigester.CHANNEL, Long.MAX_VALUE));
+        assertEquals(expected, digest(FileDigester.MAPPED, Long.MAX_VALUE));
+        assertEquals(expected, digest(FileDigester.AUTO, Long.MAX_VALUE));
+        assertEquals(expected, digest(FileDigester.AUTO, 0));
+    }
+
+    public void testSinglePassComputesEveryDigest() throws Exception {
+        String[] modes = {FileDigester.STREAM, FileDigester.CHANNEL, FileDigester.MAPPED};
+        for (int i = 0; i < modes.length; i++) {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            new FileDigester(modes[i], 0).update(data, new MessageDigest[] {sha1, md5});
+            assertEquals(digest(FileDigester.STREAM, 0, "SHA-1"), ChecksumValidatorMojo.toString(sha1.digest()));
+            assertEquals(digest(FileDigester.STREAM, 0, "MD5"), ChecksumValidatorMojo.toString(md5.digest()));
+        }
+    }
+
+    public void testInvalidMode() throws Exception {
+        try {
+            new FileDigester("turbo", 0);
+            fail("IllegalArgumentException should have been thrown for an unknown mode");
+        } catch (IllegalArgumentException e) {
+            // this is expected
+        }
+    }
+
+    private String digest(String mode, long mappedThreshold) throws Exception {
+        return digest(mode, mappedThreshold, "SHA-1");
+    }
+
+    private String digest(String mode, long mappedThreshold, String algorithm) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(algorithm);
+        new FileDigester(mode, mappedThreshold).update(data, md);
+        return ChecksumValidatorMojo.toString(md.digest());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link Fingerprint}
+ */
+public class FingerprintTest extends TestCase {
+
+    private File jar;
+    private File checksums;
+    private File stored;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        jar = File.createTempFile("fingerprint", ".jar");
+        checksums = File.createTempFile("checksums", ".txt");
+        stored = File.createTempFile("fingerprint", ".properties");
+        write(jar, "jar");
+        write(checksums, "log4j/log4j/jar/1.2.15=*\n");
+    }
+
+    protected void tearDown() throws Exception {
+        jar.delete();
+        checksums.delete();
+        stored.delete();
+        super.tearDown();
+    }
+
+    public void testSameInputsGiveSameFingerprint() throws Exception {
+        assertEquals(fingerprint("SHA-1"), fingerprint("SHA-1"));
+        assertFalse(fingerprint("SHA-1").equals(fingerprint("MD5")));
+    }
+
+    public void testChangedFilesChangeFingerprint() throws Exception {
+        String before = fingerprint("SHA-1");
+        write(checksums, "log4j/log4j/jar/1.2.15=f0a0d2e29ed910808c33135a3a5a51bba6358f7b\n");
+        String after = fingerprint("SHA-1");
+        assertFalse(before.equals(after));
+        write(jar, "a longer jar");
+        assertFalse(after.equals(fingerprint("SHA-1")));
+    }
+
+    public void testStoreAndLoad() throws Exception {
+        stored.delete();
+        assertNull(Fingerprint.load(stored, 0));
+        Fingerprint.store(stored, "abcdef");
+        assertEquals("abcdef", Fingerprint.load(stored, 0));
+        assertEquals("abcdef", Fingerprint.load(stored, 60 * 60 * 1000));
+    }
+
+    private String fingerprint(String algorithm) throws IOException {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(algorithm);
+        fingerprint.addFile("log4j/log4j/jar/1.2.15", jar);
+        fingerprint.addContent(checksums);
+        return fingerprint.getValue();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+}
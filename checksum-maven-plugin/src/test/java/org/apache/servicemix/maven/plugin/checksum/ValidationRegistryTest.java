@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link ValidationRegistry}
+ */
+public class ValidationRegistryTest extends TestCase {
+
+    private File checksums;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        checksums = File.createTempFile("checksums", ".txt");
+    }
+
+    protected void tearDown() throws Exception {
+        checksums.delete();
+        super.tearDown();
+    }
+
+    public void testOneRegistryPerSession() throws Exception {
+        Object session = new Object();
+        assertSame(ValidationRegistry.getInstance(session), ValidationRegistry.getInstance(session));
+        assertNotSame(ValidationRegistry.getInstance(session), ValidationRegistry.getInstance(new Object()));
+    }
+
+    public void testValidations() throws Exception {
+        ValidationRegistry registry = ValidationRegistry.getInstance(new Object());
+        assertFalse(registry.isValidated(checksums, "log4j/log4j/jar/1.2.15"));
+        registry.setValidated(checksums, "log4j/log4j/jar/1.2.15");
+        assertTrue(registry.isValidated(checksums, "log4j/log4j/jar/1.2.15"));
+        assertFalse(registry.isValidated(checksums, "log4j/log4j/pom/1.2.15"));
+        assertFalse(registry.isValidated(new File(checksums.getPath() + ".other"), "log4j/log4j/jar/1.2.15"));
+    }
+
+    public void testModifiedChecksumFileInvalidatesValidations() throws Exception {
+        ValidationRegistry registry = ValidationRegistry.getInstance(new Object());
+        registry.setValidated(checksums, "log4j/log4j/jar/1.2.15");
+        FileOutputStream os = new FileOutputStream(checksums);
+        try {
+            os.write("log4j/log4j/jar/1.2.15=*\n".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+        assertFalse(registry.isValidated(checksums, "log4j/log4j/jar/1.2.15"));
+    }
+
+    public void testDigests() throws Exception {
+        ValidationRegistry registry = ValidationRegistry.getInstance(new Object());
+        registry.putDigest("SHA-1", checksums, Digest.parse("abcdef"));
+        assertEquals(Digest.parse("abcdef"), registry.getDigest("SHA-1", checksums));
+        assertNull(registry.getDigest("MD5", checksums));
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.maven.plugin.checksum;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link ValidationReport}
+ */
+public class ValidationReportTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("checksum-report", ".json");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testPercentile() throws Exception {
+        long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, ValidationReport.percentile(values, 50));
+        assertEquals(10, ValidationReport.percentile(values, 95));
+        assertEquals(1, ValidationReport.percentile(new long[] {1}, 95));
+        assertEquals(0, ValidationReport.percentile(new long[0], 50));
+    }
+
+    public void testQuote() throws Exception {
+        assertEquals("\"log4j/log4j/jar/1.2.15\"", ValidationReport.quote("log4j/log4j/jar/1.2.15"));
+        assertEquals("\"C:\\\\repo\\\\\\\"x\\\"\\u0009\"", ValidationReport.quote("C:\\repo\\\"x\"\t"));
+    }
+
+    public void testWrite() throws Exception {
+        ValidationReport report = new ValidationReport("validate", new String[] {"SHA-1", "MD5"});
+        ValidationReport.Entry pom = report.addEntry("log4j/log4j/pom/1.2.15");
+        pom.setFile(new File("log4j-1.2.15.pom"));
+        pom.setResolveTime(2000000);
+        pom.setHashTime(1000000);
+        pom.setCacheHit(true);
+        pom.setVerdict(ValidationReport.VALID);
+        ValidationReport.Entry jar = report.addEntry("log4j/log4j/jar/1.2.15");
+        jar.setResolveTime(4000000);
+        jar.setHashTime(6000000);
+        jar.setBytesHashed(2 * 1024 * 1024);
+        jar.setVerdict(ValidationReport.INVALID);
+        report.addEntry("junit/junit/jar/3.8.2").setVerdict(ValidationReport.SKIPPED);
+        report.write(file);
+
+        String json = read(file);
+        assertTrue(json, json.indexOf("\"algorithms\": [\"SHA-1\", \"MD5\"]") > 0);
+        assertTrue(json, json.indexOf("\"artifacts\": 3,") > 0);
+        assertTrue(json, json.indexOf("\"invalid\": 1,") > 0);
+        assertTrue(json, json.indexOf("\"cacheHits\": 1,") > 0);
+        assertTrue(json, json.indexOf("\"cacheMisses\": 1,") > 0);
+        assertTrue(json, json.indexOf("\"bytesHashed\": 2097152,") > 0);
+        assertTrue(json, json.indexOf("\"hashThroughputMBps\": 285.7,") > 0);
+        assertTrue(json, json.indexOf("\"p50LatencyMs\": 3.0,") > 0);
+        assertTrue(json, json.indexOf("\"p95LatencyMs\": 10.0") > 0);
+        assertTrue(json, json.indexOf("{\"artifact\": \"log4j/log4j/jar/1.2.15\", \"resolveMs\": 4.0, \"bytesHashed\": 2097152, "
+                                      + "\"hashMs\": 6.0, \"cache\": \"miss\", \"verdict\": \"invalid\"}") > 0);
+        assertTrue(json, json.indexOf("{\"artifact\": \"junit/junit/jar/3.8.2\", \"verdict\": \"skipped\"}") > 0);
+    }
+
+    private static String read(File file) throws Exception {
+        StringBuffer sb = new StringBuffer();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+        } finally {
+            reader.close();
+        }
+        return sb.toString();
+    }
+}
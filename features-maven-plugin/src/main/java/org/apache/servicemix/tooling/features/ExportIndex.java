@@ -0,0 +1,174 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.osgi.framework.Version;
+
+/**
+ * Indexes the exporters of every package by exported version, to find
+ * the best exporter for an import in logarithmic time.
+ * 
+ * The best exporter is the one exporting the highest version within the
+ * version range of the import.
+ */
+public class ExportIndex<T> {
+
+    private static final Pattern VERSION_PREFIX = Pattern.compile("^(\\d+)(\\.(\\d+))?(\\.(\\d+))?");
+
+    /**
+     * The version range of an import, e.g. <code>[1.4,2)</code>, or <code>1.4</code>
+     * for any version starting from 1.4
+     */
+    public static class Range {
+
+        public static final Range ANY = new Range(Version.emptyVersion, true, null, false);
+
+        private final Version low;
+        private final boolean includeLow;
+        private final Version high;
+        private final boolean includeHigh;
+
+        private Range(Version low, boolean includeLow, Version high, boolean includeHigh) {
+            this.low = low;
+            this.includeLow = includeLow;
+            this.high = high;
+            this.includeHigh = includeHigh;
+        }
+
+        public static Range parse(String range) {
+            if (range == null || range.trim().length() == 0) {
+                return ANY;
+            }
+            String s = range.trim();
+            char start = s.charAt(0);
+            char end = s.charAt(s.length() - 1);
+            int comma = s.indexOf(',');
+            if ((start == '[' || start == '(') && (end == ']' || end == ')') && comma > 0) {
+                return new Range(toVersion(s.substring(1, comma)), start == '[',
+                                 toVersion(s.substring(comma + 1, s.length() - 1)), end == ']');
+            }
+            return new Range(toVersion(s), true, null, false);
+        }
+
+        public boolean contains(Version version) {
+            return isAboveLow(version) && isBelowHigh(version);
+        }
+
+        private boolean isAboveLow(Version version) {
+            int c = version.compareTo(low);
+            return includeLow ? c >= 0 : c > 0;
+        }
+
+        private boolean isBelowHigh(Version version) {
+            if (high == null) {
+                return true;
+            }
+            int c = version.compareTo(high);
+            return includeHigh ? c <= 0 : c < 0;
+        }
+
+        @Override
+        public String toString() {
+            if (high == null) {
+                return low.toString();
+            }
+            return (includeLow ? "[" : "(") + low + "," + high + (includeHigh ? "]" : ")");
+        }
+    }
+
+    private final Map<String, TreeMap<Version, T>> exports = new HashMap<String, TreeMap<Version, T>>();
+
+    /**
+     * Register an exporter of a package.  An exporter registered later for
+     * the same package and version replaces the earlier one.
+     */
+    public void add(String pkg, Version version, T exporter) {
+        TreeMap<Version, T> versions = exports.get(pkg);
+        if (versions == null) {
+            versions = new TreeMap<Version, T>();
+            exports.put(pkg, versions);
+        }
+        versions.put(version, exporter);
+    }
+
+    public boolean isExported(String pkg) {
+        return exports.containsKey(pkg);
+    }
+
+    /**
+     * Get the exporter of the highest version of a package within a range
+     * 
+     * @return the exporter, or <code>null</code> if no version of the package within the range is exported
+     */
+    public T getBestExporter(String pkg, Range range) {
+        TreeMap<Version, T> versions = exports.get(pkg);
+        if (versions == null) {
+            return null;
+        }
+        SortedMap<Version, T> candidates = versions;
+        if (range.high != null) {
+            if (range.includeHigh && versions.containsKey(range.high)) {
+                return range.isAboveLow(range.high) ? versions.get(range.high) : null;
+            }
+            candidates = versions.headMap(range.high);
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Version best = candidates.lastKey();
+        return range.isAboveLow(best) ? candidates.get(best) : null;
+    }
+
+    /**
+     * Get the exporter of the highest version of a package
+     * 
+     * @return the exporter, or <code>null</code> if the package is not exported
+     */
+    public T getHighestExporter(String pkg) {
+        TreeMap<Version, T> versions = exports.get(pkg);
+        return versions == null ? null : versions.get(versions.lastKey());
+    }
+
+    /**
+     * Parse a version, ignoring an invalid qualifier or anything else that follows the numbers 
+     */
+    public static Version toVersion(String version) {
+        if (version == null) {
+            return Version.emptyVersion;
+        }
+        try {
+            return Version.parseVersion(version.trim());
+        } catch (IllegalArgumentException e) {
+            Matcher matcher = VERSION_PREFIX.matcher(version.trim());
+            if (!matcher.find()) {
+                return Version.emptyVersion;
+            }
+            return new Version(Integer.parseInt(matcher.group(1)),
+                               matcher.group(3) == null ? 0 : Integer.parseInt(matcher.group(3)),
+                               matcher.group(5) == null ? 0 : Integer.parseInt(matcher.group(5)), null);
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streams a features descriptor to a file, and optionally to a gzipped copy
+ * of the file (<code>feature.xml.gz</code> next to <code>feature.xml</code>) at the same time.
+ */
+public class FeaturesWriter {
+
+    private static final int BUFFER_SIZE = 1024 * 64;
+
+    private final OutputStream out;
+    private final XMLStreamWriter writer;
+    private final File gzipFile;
+    private boolean open = true;
+
+    /**
+     * Create the file, and write the start of the descriptor
+     * 
+     * @param file the file to write
+     * @param gzip should a gzipped copy of the file be written too?
+     */
+    public FeaturesWriter(File file, boolean gzip) throws IOException, XMLStreamException {
+        gzipFile = gzip ? getGzipFile(file) : null;
+        OutputStream os = new FileOutputStream(file);
+        boolean started = false;
+        try {
+            if (gzip) {
+                OutputStream gz = new FileOutputStream(gzipFile);
+                try {
+                    gz = new GZIPOutputStream(gz, BUFFER_SIZE);
+                } catch (IOException e) {
+                    gz.close();
+                    throw e;
+                }
+                os = new Tee(os, gz);
+            }
+            out = new BufferedOutputStream(os, BUFFER_SIZE);
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            start();
+            started = true;
+        } finally {
+            if (!started) {
+                // don't leave the file(s) open if the descriptor can't be started
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // ignore, the original failure is reported instead
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the start of the descriptor to a stream, which is only flushed
+     * by {@link #finish()}; closing the stream is left to the caller.
+     */
+    public FeaturesWriter(OutputStream os) throws XMLStreamException {
+        gzipFile = null;
+        out = os;
+        writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        start();
+    }
+
+    private void start() throws XMLStreamException {
+        writer.writeStartDocument("UTF-8", "1.0");
+        newLine(0);
+        writer.writeStartElement("features");
+    }
+
+    /**
+     * @return the gzipped copy of the file, or <code>null</code> if none is written
+     */
+    public File getGzipFile() {
+        return gzipFile;
+    }
+
+    /**
+     * @return the gzipped copy of a file
+     */
+    public static File getGzipFile(File file) {
+        return new File(file.getPath() + ".gz");
+    }
+
+    /**
+     * Start a feature; <code>version</code> may be <code>null</code>
+     */
+    public void startFeature(String name, String version) throws XMLStreamException {
+        newLine(1);
+        writer.writeStartElement("feature");
+        writer.writeAttribute("name", name);
+        if (version != null) {
+            writer.writeAttribute("version", version);
+        }
+    }
+
+    public void endFeature() throws XMLStreamException {
+        newLine(1);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Write a <code>mvn:</code> bundle url into the current feature
+     */
+    public void writeBundle(String groupId, String artifactId, String version) throws XMLStreamException {
+        newLine(2);
+        writer.writeStartElement("bundle");
+        writer.writeCharacters("mvn:" + groupId + "/" + artifactId + "/" + version);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Write a reference to another feature into the current feature; <code>version</code> may be <code>null</code>
+     */
+    public void writeFeature(String name, String version) throws XMLStreamException {
+        newLine(2);
+        writer.writeStartElement("feature");
+        if (version != null) {
+            writer.writeAttribute("version", version);
+        }
+        writer.writeCharacters(name);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Write the end of the descriptor and close the file(s)
+     */
+    public void close() throws IOException, XMLStreamException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the end of the descriptor and flush it, without closing the stream
+     */
+    public void finish() throws IOException, XMLStreamException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        newLine(0);
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        newLine(0);
+        writer.close();
+        out.flush();
+    }
+
+    /**
+     * Close the file(s) without completing the descriptor, after a failure
+     */
+    public void abort() {
+        if (open) {
+            open = false;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore, the descriptor is incomplete anyway
+            }
+        }
+    }
+
+    private void newLine(int depth) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; i++) {
+            writer.writeCharacters("  ");
+        }
+    }
+
+    /*
+     * Writes everything to two streams
+     */
+    private static class Tee extends OutputStream {
+
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private Tee(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            } finally {
+                second.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * A single value that changes whenever one of the inputs of the generated file changes.
+ * 
+ * Files are either identified by their length and last modified time, which is cheap,
+ * or by their content.
+ */
+public class Fingerprint {
+
+    private final MessageDigest digest;
+
+    public Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported");
+        }
+    }
+
+    /**
+     * Add a value, such as a configuration setting; <code>null</code> is allowed
+     */
+    public void add(String value) {
+        update(String.valueOf(value));
+    }
+
+    /**
+     * Add a file, identified by a key and its length and last modified time
+     */
+    public void addFile(String key, File file) {
+        update(key + "\u0000" + file.length() + "\u0000" + file.lastModified());
+    }
+
+    /**
+     * Add the content of a stream, which is closed afterwards, or a marker if the stream is <code>null</code>
+     */
+    public void addContent(String key, InputStream is) throws IOException {
+        update(key);
+        if (is == null) {
+            update("<missing>");
+            return;
+        }
+        try {
+            byte buffer[] = new byte[1024 * 4];
+            int c;
+            while ((c = is.read(buffer)) >= 0) {
+                digest.update(buffer, 0, c);
+            }
+            digest.update((byte) 0);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Add the content of a file, or a marker if it doesn't exist
+     */
+    public void addContent(String key, File file) throws IOException {
+        addContent(key, file != null && file.exists() ? new FileInputStream(file) : null);
+    }
+
+    /**
+     * @return the fingerprint of everything added so far
+     */
+    public String getValue() {
+        try {
+            StringBuilder value = new StringBuilder();
+            for (byte b : ((MessageDigest) digest.clone()).digest()) {
+                value.append(String.format("%02x", b & 0xff));
+            }
+            return value.toString();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-1 digests cannot be cloned");
+        }
+    }
+
+    /**
+     * @return the fingerprint stored in the file, or <code>null</code> if there is none
+     */
+    public static String load(File file) {
+        if (!file.canRead()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            properties.load(is);
+            return properties.getProperty("fingerprint");
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    public static void store(File file, String fingerprint) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        OutputStream os = new FileOutputStream(file);
+        try {
+            properties.store(os, "Fingerprint of the inputs of the last generated features file");
+        } finally {
+            os.close();
+        }
+    }
+
+    private void update(String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte) 0);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+}
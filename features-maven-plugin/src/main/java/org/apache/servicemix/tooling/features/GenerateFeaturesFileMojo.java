@@ -18,12 +18,11 @@
 package org.apache.servicemix.tooling.features;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,9 +35,9 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.InvalidArtifactRTException;
@@ -77,6 +76,13 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
      */
     private File outputFile;
 
+    /**
+     * Should a gzipped copy of the file be written and attached too?
+     * 
+     * @parameter expression="${features.gzip}" default-value="false"
+     */
+    private boolean gzip;
+
     /**
      * The name of the feature, which defaults to the artifact ID if its not
      * specified
@@ -161,43 +167,57 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
      */
     private Set<Artifact> missingBundles = new TreeSet<Artifact>();
 
+    /*
+     * The manifests read during this build
+     */
+    private ManifestReader manifests = new ManifestReader();
+
     public void execute() throws MojoExecutionException, MojoFailureException {
-        OutputStream out = null;
+        FeaturesWriter out = null;
         try {
         	prepare();
         	getLog().info(String.format("-- Start generating %s --", outputFile.getAbsolutePath()));
             outputFile.getParentFile().mkdirs();
-            out = new FileOutputStream(outputFile);
+            out = new FeaturesWriter(outputFile, gzip);
             
-            PrintStream printer = new PrintStream(out);
-            populateProperties(printer);
+            populateProperties(out);
+            out.close();
             getLog().info(String.format("-- Done generating %s --", outputFile.getAbsolutePath()));
 
             // now lets attach it
             projectHelper.attachArtifact(project, attachmentArtifactType, attachmentArtifactClassifier, outputFile);
+            if (out.getGzipFile() != null) {
+                projectHelper.attachArtifact(project, attachmentArtifactType + ".gz", attachmentArtifactClassifier, out.getGzipFile());
+            }
         } catch (Exception e) {
             throw new MojoExecutionException("Unable to create dependencies file: " + e, e);
         } finally {
             if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    getLog().info("Failed to close: " + outputFile + ". Reason: " + e, e);
-                }
+                out.abort();
             }
         }
     }
 
-    protected void populateProperties(PrintStream out) throws ArtifactResolutionException, ArtifactNotFoundException, IOException {
-        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        out.println("<features>");
+    /**
+     * @deprecated the descriptor is written through a {@link FeaturesWriter},
+     *             use {@link #populateProperties(FeaturesWriter)} instead
+     */
+    @Deprecated
+    protected void populateProperties(PrintStream out) throws ArtifactResolutionException, ArtifactNotFoundException, IOException,
+        XMLStreamException {
+        FeaturesWriter writer = new FeaturesWriter(out);
+        populateProperties(writer);
+        writer.finish();
+    }
+
+    protected void populateProperties(FeaturesWriter out) throws ArtifactResolutionException, ArtifactNotFoundException, IOException,
+        XMLStreamException {
         if (includeProject) {
             writeCurrentProjectFeature(out);
         }
         if (includeDependencies) {
             writeProjectDependencyFeatures(out);
         }
-        out.println("</features>");
     }
 
     private void prepare() throws ArtifactResolutionException, ArtifactNotFoundException, IOException, InvalidVersionSpecificationException {
@@ -247,16 +267,16 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
 		return ret;
 	}
 
-	private void writeProjectDependencyFeatures(PrintStream out) {
+	private void writeProjectDependencyFeatures(FeaturesWriter out) throws XMLStreamException {
         Set<Artifact> dependencies = (Set<Artifact>)project.getDependencyArtifacts();
         dependencies.removeAll(provided);
         for (Artifact artifact : dependencies) {
             getLog().info(" Generating feature " + artifact.getArtifactId() + " from " + artifact);
-            out.println("  <feature name='" + artifact.getArtifactId() + "'>");
+            out.startFeature(artifact.getArtifactId(), null);
             currentFeature.clear();
             writeBundle(out, artifact);
             features.add(artifact);
-            out.println("  </feature>");
+            out.endFeature();
         }
         if (missingBundles.size() > 0) {
         	getLog().info("-- Some bundles were missing  --");
@@ -266,7 +286,7 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
         }
     }
 
-    private void writeBundle(PrintStream out, Artifact artifact) {
+    private void writeBundle(FeaturesWriter out, Artifact artifact) throws XMLStreamException {
     	Artifact replacement = getReplacement(artifact);
     	if (replacement != null) {
     		writeBundle(out, replacement);
@@ -278,7 +298,7 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
         }
         if (features.contains(artifact)) {
             // if we already created a feature for this one, just add that instead of the bundle
-            out.println(String.format("    <feature>%s</feature>", artifact.getArtifactId()));
+            out.writeFeature(artifact.getArtifactId(), null);
             return;
         }
         // first write the dependencies
@@ -406,9 +426,11 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
         } else {
             try {
                 resolver.resolve(artifact, remoteRepos, localRepo);
-                ZipFile file = new ZipFile(artifact.getFile());
-                ZipEntry entry = file.getEntry("META-INF/MANIFEST.MF");
-                Manifest manifest = new Manifest(file.getInputStream(entry));
+                byte[] content = manifests.getManifest(artifact.getFile());
+                if (content == null) {
+                    return false;
+                }
+                Manifest manifest = new Manifest(new ByteArrayInputStream(content));
                 if (manifest.getBsn() != null) {
                     getLog().debug(String.format("MANIFEST.MF for '%s' contains Bundle-Name '%s'",
                                                  artifact, manifest.getBsn().getName()));
@@ -441,23 +463,21 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
     }
 
 
-    private void writeCurrentProjectFeature(PrintStream out) {
-        out.println("  <feature name='" + featureName + "'>");
+    private void writeCurrentProjectFeature(FeaturesWriter out) throws XMLStreamException {
+        out.startFeature(featureName, null);
 
         writeBundle(out, project.getGroupId(), project.getArtifactId(), project.getVersion());
-        out.println();
 
         Iterator iterator = project.getDependencies().iterator();
         while (iterator.hasNext()) {
             Dependency dependency = (Dependency)iterator.next();
 
             if (isValidDependency(dependency)) {
-                out.print("  ");
                 writeBundle(out, dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
             }
         }
 
-        out.println("  </feature>");
+        out.endFeature();
     }
 
     protected boolean isValidDependency(Dependency dependency) {
@@ -466,6 +486,14 @@ public class GenerateFeaturesFileMojo extends MojoSupport {
         return true;
     }
 
+    protected void writeBundle(FeaturesWriter out, String groupId, String artifactId, String version) throws XMLStreamException {
+        out.writeBundle(groupId, artifactId, version);
+    }
+
+    /**
+     * @deprecated use {@link #writeBundle(FeaturesWriter, String, String, String)} instead
+     */
+    @Deprecated
     protected void writeBundle(PrintStream out, String groupId, String artifactId, String version) {
         out.print("    <bundle>mvn:");
         out.print(groupId);
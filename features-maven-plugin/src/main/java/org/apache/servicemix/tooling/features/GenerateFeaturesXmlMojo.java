@@ -19,22 +19,30 @@ package org.apache.servicemix.tooling.features;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.InvalidArtifactRTException;
@@ -85,6 +93,13 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
      */
     private File outputFile;
 
+    /**
+     * Should a gzipped copy of the file be written and attached too?
+     * 
+     * @parameter expression="${features.gzip}" default-value="false"
+     */
+    private boolean gzip;
+
     /**
      * The artifact type for attaching the generated file to the project
      * 
@@ -105,7 +120,89 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
      * @parameter
      */
     private String kernelVersion;
+
+    /**
+     * The JRE profile listing the packages provided by the JRE: <code>jre-1.5</code> or <code>jre-1.6</code>
+     * 
+     * @parameter expression="${features.jreProfile}" default-value="jre-1.5"
+     */
+    private String jreProfile;
+
+    /**
+     * Additional packages provided by the system bundle, separated by <code>;</code>.
+     * An entry like <code>javax.*</code> covers all the packages below <code>javax</code>.
+     * 
+     * @parameter
+     */
+    private String systemPackages;
     
+    /**
+     * Should the manifest headers of the bundles be kept in an index
+     * between builds, so that unchanged jars are never opened again?
+     * 
+     * @parameter default-value="true"
+     */
+    private boolean useManifestIndex;
+
+    /**
+     * The index of the manifest headers of the bundles
+     * 
+     * @parameter expression="${features.manifestIndex}" default-value="${settings.localRepository}/.cache/features-maven-plugin/manifest-index.properties"
+     */
+    private File manifestIndexFile;
+
+    private ManifestIndex manifestIndex;
+
+    /**
+     * The number of threads used to read the manifests of the bundles.  A value
+     * of 0 or less uses one thread per available processor, 1 reads them one by one.
+     * 
+     * @parameter expression="${features.scanThreads}" default-value="0"
+     */
+    private int scanThreads;
+
+    /**
+     * Should a fingerprint of the dependencies, the bundles file and the settings
+     * be kept, so that the file is only generated again when one of them changes?
+     * 
+     * @parameter default-value="true"
+     */
+    private boolean useFingerprint;
+
+    /**
+     * The file that holds the fingerprint of the inputs of the last generated file
+     * 
+     * @parameter default-value="${project.build.directory}/features-fingerprint.properties"
+     */
+    private File fingerprintFile;
+
+    /**
+     * Should the file be generated, ignoring the fingerprint?
+     * 
+     * @parameter expression="${features.force}" default-value="false"
+     */
+    private boolean forceGeneration;
+
+    /**
+     * Should the bundles provided by the kernel and their exports be kept in a
+     * snapshot, so that they are only read again when the kernel changes?
+     * 
+     * @parameter default-value="true"
+     */
+    private boolean useKernelSnapshot;
+
+    /**
+     * The directory holding the kernel snapshots
+     * 
+     * @parameter expression="${features.kernelSnapshots}" default-value="${settings.localRepository}/.cache/features-maven-plugin/kernels"
+     */
+    private File kernelSnapshotDirectory;
+
+    /*
+     * The manifests read during this build, by artifact id
+     */
+    private Map<String, Manifest> manifests = new HashMap<String, Manifest>();
+
     /*
      * A list of packages exported by the kernel
      */
@@ -124,110 +221,376 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
     private Set<String> knownBundles = new HashSet<String>();
     
     /*
-     * A list of exports by the bundles
+     * The exports by the bundles, indexed by package and version
      */
-    private Map<String, Map<VersionRange, Artifact>> bundleExports = new HashMap<String, Map<VersionRange, Artifact>>();
+    private ExportIndex<Artifact> bundleExports = new ExportIndex<Artifact>();
 
     /*
      * The set of system exports
      */
-    private List<String> systemExports = new LinkedList<String>();
+    private PackageSet systemExports = new PackageSet();
     
+    /*
+     * The requirements between the bundles
+     */
+    private RequirementGraph<Artifact> requirements = new RequirementGraph<Artifact>();
+
     /*
      * These bundles are the features that will be built
      */
     private Map<Artifact, Feature> features = new HashMap<Artifact, Feature>();
 
     public void execute() throws MojoExecutionException, MojoFailureException {
-        PrintStream out = null;
+        String fingerprint = useFingerprint ? computeFingerprint() : null;
+        if (isUpToDate(fingerprint)) {
+            getLog().info("Dependencies and settings are unchanged since " + outputFile.getAbsolutePath() + " was generated");
+            attach();
+            return;
+        }
+        fingerprintFile.delete();
+        FeaturesWriter out = null;
+        if (useManifestIndex) {
+            manifestIndex = new ManifestIndex(manifestIndexFile);
+            manifestIndex.load();
+        }
         try {
-            out = new PrintStream(new FileOutputStream(outputFile));
+            // fail before the file is created if the profile is unknown
             readSystemPackages();
+            out = new FeaturesWriter(outputFile, gzip);
             readKernelBundles();
             readBundles();
             discoverBundles();
             writeFeatures(out);
+            out.close();
             // now lets attach it
-            projectHelper.attachArtifact(project, attachmentArtifactType, attachmentArtifactClassifier, outputFile);
+            attach();
+            if (useFingerprint && fingerprint == null) {
+                // some of the dependencies have just been downloaded
+                fingerprint = computeFingerprint();
+            }
+            if (fingerprint != null) {
+                storeFingerprint(fingerprint);
+            }
+        } catch (MojoExecutionException e) {
+            throw e;
         } catch (Exception e) {
             getLog().error(e);
             throw new MojoExecutionException("Unable to create features.xml file: " + e, e);
         } finally {
             if (out != null) {
-                out.close();
+                out.abort();
+            }
+            storeManifestIndex();
+        }
+    }
+
+    private void attach() {
+        projectHelper.attachArtifact(project, attachmentArtifactType, attachmentArtifactClassifier, outputFile);
+        if (gzip) {
+            projectHelper.attachArtifact(project, attachmentArtifactType + ".gz", attachmentArtifactClassifier, 
+                                         FeaturesWriter.getGzipFile(outputFile));
+        }
+    }
+
+    private boolean isGenerated() {
+        return outputFile.exists() && (!gzip || FeaturesWriter.getGzipFile(outputFile).exists());
+    }
+
+    /*
+     * Check if the file was generated from inputs with the given fingerprint
+     */
+    boolean isUpToDate(String fingerprint) {
+        return fingerprint != null && !forceGeneration && isGenerated() && fingerprint.equals(Fingerprint.load(fingerprintFile));
+    }
+
+    /*
+     * Compute a fingerprint of everything the generated file depends on
+     * 
+     * @return the fingerprint, or null if it can't be computed
+     */
+    String computeFingerprint() {
+        try {
+            Fingerprint fingerprint = new Fingerprint();
+            fingerprint.add(outputFile.getAbsolutePath());
+            fingerprint.add(String.valueOf(gzip));
+            fingerprint.add(kernelVersion);
+            fingerprint.add(jreProfile);
+            fingerprint.add(systemPackages);
+            // the plugin itself, in case a different version generates a different file
+            fingerprint.addFile("plugin", getPluginFile());
+            fingerprint.addContent("config.properties", getClass().getClassLoader().getResourceAsStream("config.properties"));
+            fingerprint.addContent("bundles", bundles);
+            // the pom, which holds the dependencies the tree of provided bundles is built from
+            if (project.getFile() != null) {
+                fingerprint.addFile("pom", project.getFile());
+            }
+            // the resolved artifacts, and the direct dependencies of every scope, as provided ones are not resolved
+            Map<String, Artifact> artifacts = new TreeMap<String, Artifact>();
+            for (Artifact artifact : (Set<Artifact>) project.getArtifacts()) {
+                artifacts.put(artifact.getId(), artifact);
+            }
+            Set<Artifact> dependencies = (Set<Artifact>) project.getDependencyArtifacts();
+            for (Artifact artifact : dependencies) {
+                if (!artifacts.containsKey(artifact.getId())) {
+                    artifacts.put(artifact.getId(), artifact);
+                }
+            }
+            for (Map.Entry<String, Artifact> entry : artifacts.entrySet()) {
+                Artifact artifact = entry.getValue();
+                File file = getLocalFile(artifact);
+                if (!file.exists()) {
+                    return null;
+                }
+                fingerprint.addFile(entry.getKey() + ":" + artifact.getScope() + ":" + dependencies.contains(artifact), file);
+            }
+            return fingerprint.getValue();
+        } catch (Exception e) {
+            getLog().debug("Unable to compute the fingerprint of the inputs", e);
+            return null;
+        }
+    }
+
+    private File getPluginFile() throws URISyntaxException {
+        return new File(getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    /*
+     * Get the file of an artifact, or the file it will be resolved to in the local repository
+     */
+    private File getLocalFile(Artifact artifact) {
+        if (artifact.getFile() != null) {
+            return artifact.getFile();
+        }
+        return new File(localRepo.getBasedir(), localRepo.pathOf(artifact));
+    }
+
+    private void storeFingerprint(String fingerprint) {
+        try {
+            Fingerprint.store(fingerprintFile, fingerprint);
+        } catch (IOException e) {
+            getLog().warn("Unable to write fingerprint " + fingerprintFile, e);
+        }
+    }
+
+    private void storeManifestIndex() {
+        if (manifestIndex != null) {
+            getLog().debug(String.format("Manifest index: %d hit(s), %d miss(es)", manifestIndex.getHits(), manifestIndex.getMisses()));
+            try {
+                manifestIndex.store();
+            } catch (IOException e) {
+                getLog().warn("Unable to write manifest index " + manifestIndexFile, e);
             }
+            manifestIndex = null;
         }
     }
     
 	/*
      * Read all the system provided packages from the <code>config.properties</code> file 
      */
-    private void readSystemPackages() throws IOException {
+    private void readSystemPackages() throws IOException, MojoExecutionException {
         Properties properties = new Properties();
         properties.load(getClass().getClassLoader().getResourceAsStream("config.properties"));
-        readSystemPackages(properties, "jre-1.5");
+        if (properties.getProperty(jreProfile) == null) {
+            throw new MojoExecutionException("Unknown JRE profile '" + jreProfile + "', the available profiles are " + getJreProfiles(properties));
+        }
+        readSystemPackages(properties, jreProfile);
         readSystemPackages(properties, "osgi");
+        if (systemPackages != null) {
+            systemExports.addAll(systemPackages);
+        }
     }
 
     
-    private void readSystemPackages(Properties properties, String key) {
+    /*
+     * Get the names of the JRE profiles in the <code>config.properties</code> file
+     */
+    static Set<String> getJreProfiles(Properties properties) {
+        Set<String> profiles = new TreeSet<String>();
+        for (Object key : properties.keySet()) {
+            if (((String) key).startsWith("jre-")) {
+                profiles.add((String) key);
+            }
+        }
+        return profiles;
+    }
+
+    private void readSystemPackages(Properties properties, String key) throws MojoExecutionException {
         String packages = (String) properties.get(key);
-        for (String pkg : packages.split(";")) {
-            systemExports.add(pkg.trim());
+        if (packages == null) {
+            throw new MojoExecutionException("Unknown system packages profile: " + key);
         }
+        systemExports.addAll(packages);
     }
 
     /*
      * Download a Kernel distro and check the list of bundles provided by the Kernel
      */
     private void readKernelBundles() throws ArtifactResolutionException, ArtifactNotFoundException, MojoExecutionException,
-        ZipException, IOException, DependencyTreeBuilderException {
-        final Collection<Artifact> kernelArtifacts;
-        if (kernelVersion == null) {
-           getLog().info("Step 1: Building list of provided bundle exports");
-           kernelArtifacts = new HashSet<Artifact>();
-           DependencyNode tree = dependencyTreeBuilder.buildDependencyTree(project, localRepo, factory, artifactMetadataSource, new ArtifactFilter() {
-
-            public boolean include(Artifact artifact) {
-                return true;
+        ZipException, IOException, DependencyTreeBuilderException, InterruptedException {
+        Artifact kernel = null;
+        Collection<Artifact> kernelArtifacts = null;
+        if (kernelVersion != null) {
+            kernel = factory.createArtifact("org.apache.servicemix.kernel", "apache-servicemix-kernel", kernelVersion, Artifact.SCOPE_PROVIDED, "pom");
+        }
+        File snapshotFile = getKernelSnapshotFile(kernel);
+        String fingerprint = useKernelSnapshot ? computeKernelFingerprint(kernel) : null;
+        if (fingerprint != null) {
+            KernelSnapshot snapshot = KernelSnapshot.load(snapshotFile, fingerprint);
+            if (snapshot != null) {
+                getLog().info("Step 1 : Reading list of kernel exports from " + snapshotFile.getAbsolutePath());
+                registerKernelBundles(snapshot);
+                getLog().info("...done!");
+                return;
             }
-               
-           }, new DefaultArtifactCollector());
-           tree.accept(new DependencyNodeVisitor() {
-                public boolean endVisit(DependencyNode node) {
-                    // we want the next sibling too
-                    return true;
-                }
-                public boolean visit(DependencyNode node) {
-                    if (node.getState() != DependencyNode.OMITTED_FOR_CONFLICT) {
-                        Artifact artifact = node.getArtifact();
-                        if (Artifact.SCOPE_PROVIDED.equals(artifact.getScope()) && !artifact.getType().equals("pom")) {
-                            kernelArtifacts.add(artifact);
-                        }
-                    }
-                    // we want the children too
-                    return true;
-                }
-            });
+        }
+        if (kernel == null) {
+            getLog().info("Step 1: Building list of provided bundle exports");
+            kernelArtifacts = getProvidedArtifacts();
         } else {
             getLog().info("Step 1 : Building list of kernel exports");
             getLog().warn("Use of 'kernelVersion' is deprecated -- use a dependency with scope 'provided' instead");
-            Artifact kernel = factory.createArtifact("org.apache.servicemix.kernel", "apache-servicemix-kernel", kernelVersion, Artifact.SCOPE_PROVIDED, "pom");
             resolver.resolve(kernel, remoteRepos, localRepo);
             kernelArtifacts = getDependencies(kernel);
         }
+        preloadManifests(kernelArtifacts);
+        if (useKernelSnapshot && fingerprint == null) {
+            // the kernel pom or the provided dependencies have just been downloaded
+            fingerprint = computeKernelFingerprint(kernel);
+        }
+        KernelSnapshot snapshot = fingerprint == null ? null : new KernelSnapshot(fingerprint);
         for (Artifact artifact : kernelArtifacts) {
-            registerKernelBundle(artifact);
+            registerKernelBundle(artifact, snapshot);
+        }
+        if (snapshot != null) {
+            try {
+                snapshot.store(snapshotFile);
+            } catch (IOException e) {
+                getLog().warn("Unable to write kernel snapshot " + snapshotFile, e);
+            }
         }
         getLog().info("...done!");
     }
 
-    private void registerKernelBundle(Artifact artifact) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException,
-            IOException {
+    /*
+     * Get the provided bundles from the dependency tree of the project
+     */
+    private Collection<Artifact> getProvidedArtifacts() throws DependencyTreeBuilderException {
+        final Collection<Artifact> provided = new HashSet<Artifact>();
+        DependencyNode tree = dependencyTreeBuilder.buildDependencyTree(project, localRepo, factory, artifactMetadataSource, new ArtifactFilter() {
+
+            public boolean include(Artifact artifact) {
+                return true;
+            }
+
+        }, new DefaultArtifactCollector());
+        tree.accept(new DependencyNodeVisitor() {
+            public boolean endVisit(DependencyNode node) {
+                // we want the next sibling too
+                return true;
+            }
+            public boolean visit(DependencyNode node) {
+                if (node.getState() != DependencyNode.OMITTED_FOR_CONFLICT) {
+                    Artifact artifact = node.getArtifact();
+                    if (Artifact.SCOPE_PROVIDED.equals(artifact.getScope()) && !artifact.getType().equals("pom")) {
+                        provided.add(artifact);
+                    }
+                }
+                // we want the children too
+                return true;
+            }
+        });
+        return provided;
+    }
+
+    /*
+     * Get the snapshot file for the kernel pom, or for the provided dependencies of the project if there is no kernel pom
+     */
+    private File getKernelSnapshotFile(Artifact kernel) {
+        if (kernel == null) {
+            return new File(kernelSnapshotDirectory, String.format("%s_%s_provided.properties", project.getGroupId(), project.getArtifactId()));
+        }
+        return new File(kernelSnapshotDirectory, String.format("%s_%s_%s.properties", kernel.getGroupId(), kernel.getArtifactId(), kernel.getVersion()));
+    }
+
+    /*
+     * Compute a fingerprint of the kernel pom, or of the project pom and its provided dependencies if there is no kernel pom,
+     * so that a snapshot can be found without building the dependency tree
+     * 
+     * @return the fingerprint, or null if it can't be computed
+     */
+    String computeKernelFingerprint(Artifact kernel) {
+        try {
+            Fingerprint fingerprint = new Fingerprint();
+            fingerprint.addFile("plugin", getPluginFile());
+            if (kernel != null) {
+                File pom = new File(localRepo.getBasedir(), localRepo.pathOf(kernel));
+                if (!pom.exists()) {
+                    return null;
+                }
+                fingerprint.addFile(kernel.getId(), pom);
+            } else {
+                // the pom holds the provided dependencies and the versions of their transitive dependencies
+                if (project.getFile() != null) {
+                    fingerprint.addFile("pom", project.getFile());
+                }
+                Map<String, File> files = new TreeMap<String, File>();
+                for (Artifact artifact : (Set<Artifact>) project.getDependencyArtifacts()) {
+                    if (Artifact.SCOPE_PROVIDED.equals(artifact.getScope())) {
+                        File file = getLocalFile(artifact);
+                        if (!file.exists()) {
+                            return null;
+                        }
+                        files.put(artifact.getId(), file);
+                    }
+                }
+                for (Map.Entry<String, File> entry : files.entrySet()) {
+                    fingerprint.addFile(entry.getKey(), entry.getValue());
+                }
+            }
+            return fingerprint.getValue();
+        } catch (Exception e) {
+            getLog().debug("Unable to compute the fingerprint of the kernel", e);
+            return null;
+        }
+    }
+
+    /*
+     * Register the kernel bundles and their exports from a snapshot, without opening any of them
+     */
+    private void registerKernelBundles(KernelSnapshot snapshot) {
+        for (KernelSnapshot.Bundle bundle : snapshot.getBundles()) {
+            Artifact artifact;
+            if (bundle.getClassifier() == null) {
+                artifact = factory.createArtifact(bundle.getGroupId(), bundle.getArtifactId(), bundle.getVersion(), 
+                                                  Artifact.SCOPE_PROVIDED, bundle.getType());
+            } else {
+                artifact = factory.createArtifactWithClassifier(bundle.getGroupId(), bundle.getArtifactId(), bundle.getVersion(), 
+                                                                bundle.getType(), bundle.getClassifier());
+                artifact.setScope(Artifact.SCOPE_PROVIDED);
+            }
+            getLog().debug("Registering bundle " + artifact);
+            knownBundles.add(toString(artifact));
+            for (String[] export : bundle.getExports()) {
+                kernelExports.put(export[0].intern(), export[1] == null ? null : new VersionRange(export[1]));
+                bundleExports.add(export[0], ExportIndex.toVersion(export[1]), artifact);
+            }
+        }
+    }
+
+    private void registerKernelBundle(Artifact artifact, KernelSnapshot snapshot) throws ArtifactResolutionException, 
+            ArtifactNotFoundException, ZipException, IOException {
         Manifest manifest = getManifest(artifact);
+        KernelSnapshot.Bundle bundle = null;
+        if (snapshot != null) {
+            bundle = snapshot.addBundle(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), 
+                                        artifact.getType(), artifact.getClassifier());
+        }
         if (manifest.getExports() != null) {
             for (ManifestEntry entry : (List<ManifestEntry>)manifest.getExports()) {
-                kernelExports.put(entry.getName(), entry.getVersion());
+                if (bundle != null) {
+                    bundle.addExport(entry.getName(), toString(entry.getVersion()));
+                }
+                kernelExports.put(entry.getName().intern(), entry.getVersion());
                 getLog().debug(" adding kernel export " + entry.getName() + " (" + entry.getVersion() + ")");
             }
         }
@@ -237,22 +600,27 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
     /*
      * Read the list of bundles we can use to satisfy links
      */
-    private void readBundles() throws IOException, ArtifactResolutionException, ArtifactNotFoundException {        
+    private void readBundles() throws IOException, ArtifactResolutionException, ArtifactNotFoundException, InterruptedException {        
         BufferedReader reader = null;
         try {
             if (bundles != null) {
                 getLog().info("Step 2 : Building a list of exports for bundles in " + bundles.getAbsolutePath());
                 reader = new BufferedReader(new FileReader(bundles));
+                List<Artifact> artifacts = new ArrayList<Artifact>();
                 String line = reader.readLine();
                 while (line != null) {
                     if (line.contains("/") && !line.startsWith("#")) {
                         String[] elements = line.split("/");
                         Artifact artifact = factory.createArtifact(elements[0], elements[1], elements[2], Artifact.SCOPE_PROVIDED,
                                                                    elements[3]);
-                        registerBundle(artifact);
+                        artifacts.add(artifact);
                     }
                     line = reader.readLine();
                 }                
+                preloadManifests(artifacts);
+                for (Artifact artifact : artifacts) {
+                    registerBundle(artifact);
+                }
             } else {
                 getLog().info("Step 2 : No Bundle file supplied for building list of exports");
             }
@@ -267,8 +635,10 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
     /*
      * Auto-discover bundles currently in the dependencies
      */
-    private void discoverBundles() throws ArtifactResolutionException, ArtifactNotFoundException, ZipException, IOException {
+    private void discoverBundles() throws ArtifactResolutionException, ArtifactNotFoundException, ZipException, IOException,
+        InterruptedException {
     	getLog().info("Step 3 : Discovering bundles in Maven dependencies");
+    	List<Artifact> candidates = new ArrayList<Artifact>();
 		for (Artifact dependency : (Set<Artifact>) project.getArtifacts()) {
 			// we will generate a feature for this afterwards
 			if (project.getDependencyArtifacts().contains(dependency)) {
@@ -278,6 +648,10 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
 			if (dependency.getScope().equals(Artifact.SCOPE_PROVIDED)) {
 			    continue;
 			}
+			candidates.add(dependency);
+		}
+		preloadManifests(candidates);
+		for (Artifact dependency : candidates) {
 			if (isDiscoverableBundle(dependency)) {
 				getLog().info("  Discovered " + dependency);
 				registerBundle(dependency);
@@ -289,11 +663,9 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
     /*
      * Write all project dependencies as feature
      */
-    private void writeFeatures(PrintStream out) throws ArtifactResolutionException, ArtifactNotFoundException,
-        ZipException, IOException {
+    private void writeFeatures(FeaturesWriter out) throws ArtifactResolutionException, ArtifactNotFoundException,
+        ZipException, IOException, XMLStreamException {
         getLog().info("Step 4 : Generating " + outputFile.getAbsolutePath());
-        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        out.println("<features>");
         Set<Artifact> dependencies = (Set<Artifact>)project.getDependencyArtifacts();
         for (Artifact artifact : dependencies) {
             if (!artifact.getScope().equals(Artifact.SCOPE_PROVIDED) && !artifact.getType().equals("pom")) {
@@ -303,7 +675,6 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
                 registerFeature(artifact, feature);
             }
         }
-        out.println("</features>");
         getLog().info("...done!");
     }
 
@@ -311,8 +682,9 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
      * Get the feature for an artifact 
      */
     private Feature getFeature(Artifact artifact) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException, IOException {
+        addRequirements(artifact);
         Feature feature = new Feature(artifact);
-        addRequirements(artifact, feature);
+        feature.addRequirements(requirements.getClosure(artifact));
         return feature;
     }
 
@@ -363,22 +735,41 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
      }
 
     /*
-     * Add requirements for an artifact to a feature
+     * Add the requirements of an artifact, and of everything it requires, to the requirement graph
+     */
+    private void addRequirements(Artifact artifact) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException, IOException {
+        LinkedList<Artifact> pending = new LinkedList<Artifact>();
+        pending.add(artifact);
+        while (!pending.isEmpty()) {
+            Artifact next = pending.removeFirst();
+            if (requirements.contains(next)) {
+                continue;
+            }
+            if (isFeature(next)) {
+                // the feature for this bundle brings its own requirements
+                requirements.setRequirements(next, Collections.<Artifact>emptyList());
+            } else {
+                getLog().debug("  Getting requirements for " + next);
+                List<Artifact> required = getRequirements(next);
+                requirements.setRequirements(next, required);
+                pending.addAll(required);
+            }
+        }
+    }
+
+    /*
+     * Get the bundles exporting the packages imported by an artifact
      */
-    private void addRequirements(Artifact artifact, Feature feature) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException, IOException {
+    private List<Artifact> getRequirements(Artifact artifact) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException, IOException {
         Manifest manifest = getManifest(artifact);
-        Collection<ManifestEntry> remaining = getRemainingImports(manifest);
-        Artifact previous = null;
-        for (ManifestEntry entry : remaining) {
-            Artifact add = null;
-            Map<VersionRange, Artifact> versions = bundleExports.get(entry.getName());
-            if (versions != null) {
-                for (VersionRange range : versions.keySet()) {
-                    add = versions.get(range);
-                    if (range.compareTo(entry.getVersion()) == 0) {
-                        add = versions.get(range);
-                    }
-                }
+        Set<Artifact> required = new LinkedHashSet<Artifact>();
+        for (ManifestEntry entry : getRemainingImports(manifest)) {
+            ExportIndex.Range range = ExportIndex.Range.parse(toString(entry.getVersion()));
+            Artifact add = bundleExports.getBestExporter(entry.getName(), range);
+            if (add == null && bundleExports.isExported(entry.getName())) {
+                // no bundle exports a matching version, so use the highest one available
+                add = bundleExports.getHighestExporter(entry.getName());
+                getLog().debug(String.format("  No bundle exports %s in range %s; using %s", entry.getName(), range, add));
             }
             if (add == null) {
                 if (isOptional(entry)) {
@@ -391,15 +782,11 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
                                   String.format("  Unable to find suitable bundle for dependency %s (%s) (required by %s)", 
                                                 entry.getName(), entry.getVersion(), artifact.getArtifactId()));
                 }
-            } else {
-                if (!add.equals(previous) && feature.push(add) && !isFeature(add)) {
-                    //and get requirements for the bundle we just added
-                    getLog().debug("  Getting requirements for " + add);
-                    addRequirements(add, feature);
-                }
+            } else if (!add.equals(artifact)) {
+                required.add(add);
             }
-            previous = add;
         }
+        return new ArrayList<Artifact>(required);
     }
 
     /*
@@ -426,13 +813,8 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
         knownBundles.add(toString(artifact));
         Manifest manifest = getManifest(artifact);
         for (ManifestEntry entry : getManifestEntries(manifest.getExports())) {
-            Map<VersionRange, Artifact> versions = bundleExports.get(entry.getName());
-            if (versions == null) {
-                versions = new HashMap<VersionRange, Artifact>();
-            }
-            versions.put(entry.getVersion(), artifact);
+            bundleExports.add(entry.getName(), ExportIndex.toVersion(toString(entry.getVersion())), artifact);
             getLog().debug(String.format(" %s exported by bundle %s", entry.getName(), artifact));
-            bundleExports.put(entry.getName(), versions);
         }
     }
 
@@ -442,6 +824,8 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
     private void registerFeature(Artifact artifact, Feature feature) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException,
         IOException {
         features.put(artifact, feature);
+        // from now on, bundles requiring this one get the feature instead of its requirements
+        requirements.setRequirements(artifact, Collections.<Artifact>emptyList());
         registerBundle(artifact);
     }
 
@@ -449,29 +833,17 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
      * Determine the list of imports to be resolved
      */
     private Collection<ManifestEntry> getRemainingImports(Manifest manifest) {
-        // take all imports
-        Collection<ManifestEntry> input = getManifestEntries(manifest.getImports());
-        Collection<ManifestEntry> output = new LinkedList<ManifestEntry>(input);
-        // remove imports satisfied by exports in the same bundle
-        for (ManifestEntry entry : input) {
-            for (ManifestEntry export : getManifestEntries(manifest.getExports())) {
-                if (entry.getName().equals(export.getName())) {
-                    output.remove(entry);
-                }
-            }
+        // packages exported by the same bundle satisfy its own imports
+        Set<String> exports = new HashSet<String>();
+        for (ManifestEntry export : getManifestEntries(manifest.getExports())) {
+            exports.add(export.getName());
         }
-        // remove imports for packages exported by the kernel
-        for (ManifestEntry entry : input) {
-            for (String export : kernelExports.keySet()) {
-                if (entry.getName().equals(export)) {
-                    output.remove(entry);
-                }
-            }
-        }
-        // remove imports for packages exported by the system bundle
-        for (ManifestEntry entry : input) {
-            if (systemExports.contains(entry.getName())) {
-                output.remove(entry);
+        Collection<ManifestEntry> output = new ArrayList<ManifestEntry>();
+        for (ManifestEntry entry : getManifestEntries(manifest.getImports())) {
+            String name = entry.getName();
+            // skip imports satisfied by the bundle itself, the kernel or the system bundle
+            if (!exports.contains(name) && !kernelExports.containsKey(name) && !systemExports.contains(name)) {
+                output.add(entry);
             }
         }
         return output;
@@ -487,16 +859,76 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
 
     private Manifest getManifest(Artifact artifact) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException,
         IOException {
-        File localFile = new File(localRepo.pathOf(artifact));
-        ZipFile file;
-        if (localFile.exists()) {
+        Manifest manifest = manifests.get(artifact.getId());
+        if (manifest == null) {
+            manifest = readManifest(artifact);
+            manifests.put(artifact.getId(), manifest);
+        }
+        return manifest;
+    }
+
+    /*
+     * Resolve an artifact and read its manifest; safe to call from several threads at once
+     */
+    private Manifest readManifest(Artifact artifact) throws ArtifactResolutionException, ArtifactNotFoundException, ZipException,
+        IOException {
+        File localFile = new File(localRepo.getBasedir(), localRepo.pathOf(artifact));
+        if (!localFile.exists()) {
             //avoid going over to the repository if the file is already on the disk
-            file = new ZipFile(localFile);
+            synchronized (resolver) {
+                resolver.resolve(artifact, remoteRepos, localRepo);
+            }
+            localFile = artifact.getFile();
+        }
+        Map<String, String> headers;
+        if (manifestIndex != null) {
+            headers = manifestIndex.getHeaders(artifact.getId(), localFile);
         } else {
-            resolver.resolve(artifact, remoteRepos, localRepo);
-            file = new ZipFile(artifact.getFile());
+            headers = ManifestIndex.readHeaders(localFile);
+        }
+        if (headers == null) {
+            throw new ZipException("No META-INF/MANIFEST.MF found in " + localFile);
+        }
+        return new Manifest(ManifestIndex.toManifest(headers));
+    }
+
+    /*
+     * Read the manifests of a number of artifacts on several threads, before they are registered one by one.
+     * The manifests are added in the order of the artifacts; an artifact that fails is left to be read again
+     * (and to report the failure) when it is registered.
+     */
+    private void preloadManifests(Collection<Artifact> artifacts) throws InterruptedException {
+        List<Artifact> pending = new ArrayList<Artifact>();
+        Set<String> ids = new HashSet<String>();
+        for (Artifact artifact : artifacts) {
+            if (!manifests.containsKey(artifact.getId()) && ids.add(artifact.getId())) {
+                pending.add(artifact);
+            }
+        }
+        int threads = scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+        if (threads == 1 || pending.size() < 2) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, pending.size()));
+        try {
+            List<Future<Manifest>> results = new ArrayList<Future<Manifest>>();
+            for (final Artifact artifact : pending) {
+                results.add(executor.submit(new Callable<Manifest>() {
+                    public Manifest call() throws Exception {
+                        return readManifest(artifact);
+                    }
+                }));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    manifests.put(pending.get(i).getId(), results.get(i).get());
+                } catch (ExecutionException e) {
+                    getLog().debug("Unable to preload the manifest of " + pending.get(i), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
-        return new Manifest(file.getInputStream(file.getEntry("META-INF/MANIFEST.MF")));
     }
 
     private List<Artifact> getDependencies(Artifact artifact) {
@@ -518,61 +950,74 @@ public class GenerateFeaturesXmlMojo extends MojoSupport {
         return String.format("%s/%s/%s", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
     }
 
+    private static String toString(VersionRange range) {
+        return range == null ? null : range.toString();
+    }
+
     private class Feature {
 
-        private Stack<Artifact> artifacts = new Stack<Artifact>();
+        /*
+         * The bundles required by the feature, every one after the bundles it requires
+         */
+        private final Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
         private final Artifact artifact;
         
         private Feature(Artifact artifact) {
             super();
             this.artifact = artifact;
-            artifacts.push(artifact);
         }
 
-        public boolean push(Artifact item) {
-            if (artifacts.contains(item)) {
+        /*
+         * Add a bundle required by the feature, moving it to the end if it was added before 
+         */
+        public void add(Artifact item) {
+            if (!item.equals(artifact)) {
                 artifacts.remove(item);
-                artifacts.push(item);
-                return false;
+                artifacts.add(item);
             }
-            if (!artifacts.contains(item)) {
-                artifacts.push(item);
-                return true;
+        }
+
+        /*
+         * Add the closure of the feature's bundle
+         */
+        public void addRequirements(Collection<Artifact> closure) {
+            for (Artifact item : closure) {
+                add(item);
             }
-            return false;
         }
 
-        public void write(PrintStream out) {
-            out.println("  <feature name='" + artifact.getArtifactId() + "' version='"
-            		+ artifact.getBaseVersion() + "'>");
+        public void write(FeaturesWriter out) throws XMLStreamException {
+            out.startFeature(artifact.getArtifactId(), artifact.getBaseVersion());
             
-            Stack<Artifact> resulting = new Stack<Artifact>();
-            resulting.addAll(artifacts);
-
             // remove dependencies for included features
+            Set<Artifact> excluded = new HashSet<Artifact>();
             for (Artifact next : artifacts) {
                 if (isFeature(next)) {
-                    resulting.removeAll(features.get(next).getDependencies());
+                    excluded.addAll(features.get(next).getDependencies());
                 }
             }
             
-            while (!resulting.isEmpty()) {
-            	Artifact next = resulting.pop();
-                if (isFeature(next)) {
-                    out.println("    <feature version='"
-            		+ next.getBaseVersion() + "'>" + String.format("%s</feature>", next.getArtifactId()));
-                } else {
-            		out.println(String.format("    <bundle>mvn:%s/%s/%s</bundle>", 
-                            next.getGroupId(), next.getArtifactId(), next.getBaseVersion()));
+            for (Artifact next : artifacts) {
+                if (!excluded.contains(next)) {
+                    write(out, next);
                 }
             }
-            out.println("  </feature>");
+            if (!excluded.contains(artifact)) {
+                write(out, artifact);
+            }
+            out.endFeature();
+        }
+
+        private void write(FeaturesWriter out, Artifact next) throws XMLStreamException {
+            if (isFeature(next)) {
+                out.writeFeature(next.getArtifactId(), next.getBaseVersion());
+            } else {
+                out.writeBundle(next.getGroupId(), next.getArtifactId(), next.getBaseVersion());
+            }
         }
         
-        public List<Artifact> getDependencies() {
-            List<Artifact> dependencies = new LinkedList<Artifact>(artifacts);
-            dependencies.remove(artifact);
-            return dependencies;
+        public Set<Artifact> getDependencies() {
+            return Collections.unmodifiableSet(artifacts);
         }
     }
 }
@@ -0,0 +1,217 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The bundles provided by a kernel and the packages they export, as found by
+ * the last build against the same kernel, so that the kernel bundles don't have
+ * to be resolved and opened on every build.
+ * 
+ * A snapshot is only valid for the fingerprint of the kernel it was taken for.
+ */
+public class KernelSnapshot {
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    /**
+     * A bundle provided by the kernel
+     */
+    public static class Bundle {
+
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String type;
+        private final String classifier;
+        private final List<String[]> exports = new ArrayList<String[]>();
+
+        private Bundle(String groupId, String artifactId, String version, String type, String classifier) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.type = type;
+            this.classifier = classifier;
+        }
+
+        /**
+         * Add a package exported by the bundle; <code>version</code> may be <code>null</code>
+         */
+        public void addExport(String pkg, String version) {
+            exports.add(new String[] {pkg, version});
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the classifier, or <code>null</code>
+         */
+        public String getClassifier() {
+            return classifier;
+        }
+
+        /**
+         * @return the exported packages, as pairs of package name and version, in the order they were added
+         */
+        public List<String[]> getExports() {
+            return Collections.unmodifiableList(exports);
+        }
+    }
+
+    private final String fingerprint;
+    private final List<Bundle> bundles = new ArrayList<Bundle>();
+
+    public KernelSnapshot(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Add a bundle provided by the kernel; <code>classifier</code> may be <code>null</code>
+     */
+    public Bundle addBundle(String groupId, String artifactId, String version, String type, String classifier) {
+        Bundle bundle = new Bundle(groupId, artifactId, version, type, classifier);
+        bundles.add(bundle);
+        return bundle;
+    }
+
+    /**
+     * @return the bundles, in the order they were added
+     */
+    public List<Bundle> getBundles() {
+        return Collections.unmodifiableList(bundles);
+    }
+
+    /**
+     * Load a snapshot
+     * 
+     * @return the snapshot, or <code>null</code> if the file doesn't exist, can't be read or was taken for another fingerprint
+     */
+    public static KernelSnapshot load(File file, String fingerprint) {
+        if (!file.canRead()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            properties.load(is);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(is);
+        }
+        if (!fingerprint.equals(properties.getProperty(FINGERPRINT))) {
+            return null;
+        }
+        KernelSnapshot snapshot = new KernelSnapshot(fingerprint);
+        for (int i = 0; properties.getProperty("bundle." + i) != null; i++) {
+            String[] coordinates = properties.getProperty("bundle." + i).split("/");
+            if (coordinates.length < 4) {
+                return null;
+            }
+            Bundle bundle = snapshot.addBundle(coordinates[0], coordinates[1], coordinates[2], coordinates[3],
+                                               coordinates.length > 4 ? coordinates[4] : null);
+            for (int j = 0; properties.getProperty("bundle." + i + ".export." + j) != null; j++) {
+                String[] export = properties.getProperty("bundle." + i + ".export." + j).split(" ", 2);
+                bundle.addExport(export[0], export.length > 1 ? export[1] : null);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Store the snapshot, replacing the file at once so that a build reading it never sees half of it
+     */
+    public void store(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(FINGERPRINT, fingerprint);
+        for (int i = 0; i < bundles.size(); i++) {
+            Bundle bundle = bundles.get(i);
+            String coordinates = bundle.groupId + "/" + bundle.artifactId + "/" + bundle.version + "/" + bundle.type;
+            if (bundle.classifier != null) {
+                coordinates += "/" + bundle.classifier;
+            }
+            properties.setProperty("bundle." + i, coordinates);
+            for (int j = 0; j < bundle.exports.size(); j++) {
+                String[] export = bundle.exports.get(j);
+                properties.setProperty("bundle." + i + ".export." + j, 
+                                       export[1] == null ? export[0] : export[0] + " " + export[1]);
+            }
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        boolean written = false;
+        try {
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                properties.store(os, "Kernel bundles: bundle.n=groupId/artifactId/version/type[/classifier], bundle.n.export.m=package [version]");
+            } finally {
+                close(os);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
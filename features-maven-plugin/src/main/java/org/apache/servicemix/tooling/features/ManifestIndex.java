@@ -0,0 +1,228 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+
+/**
+ * An on-disk index of the OSGi headers of the manifests of jar files.
+ * 
+ * Entries are keyed by artifact id and are only used while the length
+ * and last modified time of the jar still match the ones recorded when
+ * the manifest was read, so a jar is only opened again once it changed.
+ */
+public class ManifestIndex {
+
+    /**
+     * The manifest headers kept in the index
+     */
+    public static final String[] HEADERS = {
+        "Bundle-ManifestVersion", "Bundle-SymbolicName", "Bundle-Version", "Export-Package", "Import-Package"
+    };
+
+    private static final String FILE = "#file";
+    private static final String NO_MANIFEST = "#none";
+
+    private final File file;
+    private final Properties entries = new Properties();
+    private boolean modified;
+    private int hits;
+    private int misses;
+
+    public ManifestIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the index file, if it exists.  An unreadable index is treated as an empty one.
+     */
+    public synchronized void load() {
+        entries.clear();
+        modified = false;
+        if (!file.canRead()) {
+            return;
+        }
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            entries.load(is);
+        } catch (IOException e) {
+            entries.clear();
+        } finally {
+            close(is);
+        }
+    }
+
+    /**
+     * Writes the index file if any entry changed since it was loaded.
+     */
+    public synchronized void store() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        // the index may be shared by several builds, so write a temp file of our own and never leave a partial one behind
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        boolean written = false;
+        try {
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                entries.store(os, "Manifest headers: id#header=value");
+            } finally {
+                close(os);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        }
+        modified = false;
+    }
+
+    /**
+     * Get the manifest headers of a jar, reading them from the jar only if it is unknown or changed since.
+     * 
+     * @param id the id of the artifact
+     * @param jar the jar file of the artifact
+     * @return the headers, or <code>null</code> if the jar has no manifest
+     */
+    public Map<String, String> getHeaders(String id, File jar) throws IOException {
+        String stamp = jar.length() + "," + jar.lastModified();
+        synchronized (this) {
+            if (stamp.equals(entries.getProperty(id + FILE))) {
+                hits++;
+                if (entries.getProperty(id + NO_MANIFEST) != null) {
+                    return null;
+                }
+                Map<String, String> headers = new LinkedHashMap<String, String>();
+                for (String header : HEADERS) {
+                    String value = entries.getProperty(id + "#" + header);
+                    if (value != null) {
+                        headers.put(header, value);
+                    }
+                }
+                return headers;
+            }
+            misses++;
+        }
+        // read the jar without holding the lock, so that several jars can be read at once
+        Map<String, String> headers = readHeaders(jar);
+        update(id, stamp, headers);
+        return headers;
+    }
+
+    private synchronized void update(String id, String stamp, Map<String, String> headers) {
+        entries.remove(id + NO_MANIFEST);
+        for (String header : HEADERS) {
+            entries.remove(id + "#" + header);
+        }
+        entries.setProperty(id + FILE, stamp);
+        if (headers == null) {
+            entries.setProperty(id + NO_MANIFEST, "true");
+        } else {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                entries.setProperty(id + "#" + header.getKey(), header.getValue());
+            }
+        }
+        modified = true;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Read the indexed manifest headers from a jar file
+     * 
+     * @return the headers, or <code>null</code> if the jar has no manifest
+     */
+    public static Map<String, String> readHeaders(File jar) throws IOException {
+        return toHeaders(ManifestReader.read(jar));
+    }
+
+    /**
+     * Extract the indexed headers from the content of a manifest
+     * 
+     * @return the headers, or <code>null</code> if there is no manifest
+     */
+    public static Map<String, String> toHeaders(byte[] manifest) throws IOException {
+        if (manifest == null) {
+            return null;
+        }
+        Attributes attributes = new java.util.jar.Manifest(new ByteArrayInputStream(manifest)).getMainAttributes();
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (String header : HEADERS) {
+            String value = attributes.getValue(header);
+            if (value != null) {
+                headers.put(header, value);
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Turn the headers back into a MANIFEST.MF stream
+     */
+    public static InputStream toManifest(Map<String, String> headers) throws IOException {
+        java.util.jar.Manifest manifest = new java.util.jar.Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            attributes.putValue(header.getKey(), header.getValue());
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        manifest.write(os);
+        return new ByteArrayInputStream(os.toByteArray());
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
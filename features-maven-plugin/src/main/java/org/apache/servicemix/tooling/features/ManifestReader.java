@@ -0,0 +1,260 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the <code>META-INF/MANIFEST.MF</code> of jar files.
+ * 
+ * Instead of opening the whole archive, only the end of central directory
+ * record, the central directory and the manifest entry itself are read,
+ * through a single {@link FileChannel} that is closed before returning.
+ * Archives this reader does not handle, like zip64 archives, are read
+ * through {@link JarFile} instead, as are manifests whose content does
+ * not have the size recorded in the central directory.
+ * 
+ * Instances memoize the manifests they read for as long as the length
+ * and last modified time of the jar do not change.
+ */
+public class ManifestReader {
+
+    public static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int MAX_MANIFEST_SIZE = 16 * 1024 * 1024;
+
+    private static final byte[] MANIFEST_NAME = MANIFEST.getBytes();
+
+    private final Map<String, byte[]> manifests = new HashMap<String, byte[]>();
+    private final Map<String, String> stamps = new HashMap<String, String>();
+
+    /**
+     * Get the manifest of a jar, reading it only once per build.
+     * 
+     * @return the content of the manifest, or <code>null</code> if the jar has none
+     */
+    public synchronized byte[] getManifest(File jar) throws IOException {
+        String path = jar.getAbsolutePath();
+        String stamp = jar.length() + "," + jar.lastModified();
+        if (stamp.equals(stamps.get(path))) {
+            return manifests.get(path);
+        }
+        byte[] manifest = read(jar);
+        manifests.put(path, manifest);
+        stamps.put(path, stamp);
+        return manifest;
+    }
+
+    /**
+     * Read the manifest of a jar
+     * 
+     * @return the content of the manifest, or <code>null</code> if the jar has none
+     */
+    public static byte[] read(File jar) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(jar, "r");
+        try {
+            return read(file.getChannel());
+        } catch (FallbackException e) {
+            // e.g. a zip64 archive, fall back to JarFile below
+        } finally {
+            file.close();
+        }
+        return readWithJarFile(jar);
+    }
+
+    /*
+     * @return the manifest, or null if there is none
+     * @throws FallbackException if the archive has to be read by JarFile
+     */
+    private static byte[] read(FileChannel channel) throws IOException, FallbackException {
+        long size = channel.size();
+        if (size < EOCD_SIZE) {
+            throw new ZipException("Not a zip file");
+        }
+        // the end of central directory record is followed by a comment of at most 64k
+        int tailSize = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT_SIZE);
+        long tailStart = size - tailSize;
+        ByteBuffer tail = read(channel, tailStart, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xFFFF) <= tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("No end of central directory record found");
+        }
+        int entries = tail.getShort(eocd + 10) & 0xFFFF;
+        long centralSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long centralOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (entries == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL) {
+            throw new FallbackException("zip64");
+        }
+        // archives may be prefixed, e.g. by a launcher script
+        long centralStart = tailStart + eocd - centralSize;
+        long shift = centralStart - centralOffset;
+        if (centralStart < 0 || shift < 0 || centralSize > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid central directory");
+        }
+
+        ByteBuffer central = read(channel, centralStart, (int) centralSize);
+        int position = 0;
+        for (int i = 0; i < entries && position + CENTRAL_HEADER_SIZE <= centralSize; i++) {
+            if (central.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry");
+            }
+            int nameLength = central.getShort(position + 28) & 0xFFFF;
+            int extraLength = central.getShort(position + 30) & 0xFFFF;
+            int commentLength = central.getShort(position + 32) & 0xFFFF;
+            if (isManifest(central, position + CENTRAL_HEADER_SIZE, nameLength)) {
+                int method = central.getShort(position + 10) & 0xFFFF;
+                long compressedSize = central.getInt(position + 20) & 0xFFFFFFFFL;
+                long uncompressedSize = central.getInt(position + 24) & 0xFFFFFFFFL;
+                long localOffset = (central.getInt(position + 42) & 0xFFFFFFFFL) + shift;
+                return readEntry(channel, method, compressedSize, uncompressedSize, localOffset);
+            }
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return null;
+    }
+
+    private static boolean isManifest(ByteBuffer central, int offset, int length) {
+        if (length != MANIFEST_NAME.length || offset + length > central.limit()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toUpperCase((char) central.get(offset + i)) != MANIFEST_NAME[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readEntry(FileChannel channel, int method, long compressedSize, long uncompressedSize,
+                                    long localOffset) throws IOException, FallbackException {
+        if (compressedSize > MAX_MANIFEST_SIZE || uncompressedSize > MAX_MANIFEST_SIZE) {
+            throw new ZipException(MANIFEST + " is too large");
+        }
+        ByteBuffer local = read(channel, localOffset, LOCAL_HEADER_SIZE);
+        if (local.getInt(0) != LOCAL_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + MANIFEST);
+        }
+        long dataOffset = localOffset + LOCAL_HEADER_SIZE + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+        byte[] data = new byte[(int) compressedSize];
+        read(channel, dataOffset, data.length).get(data);
+        if (method == ZipEntry.STORED) {
+            if (data.length != uncompressedSize) {
+                throw new FallbackException("Size mismatch");
+            }
+            return data;
+        }
+        if (method != ZipEntry.DEFLATED) {
+            throw new FallbackException("Compression method " + method);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            // the nowrap inflater needs an extra byte of input to finish
+            byte[] input = new byte[data.length + 1];
+            System.arraycopy(data, 0, input, 0, data.length);
+            inflater.setInput(input);
+            byte[] manifest = new byte[(int) uncompressedSize];
+            int length = 0;
+            while (length < manifest.length && !inflater.finished()) {
+                int count = inflater.inflate(manifest, length, manifest.length - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated " + MANIFEST);
+                }
+                length += count;
+            }
+            // the inflated content must have exactly the size of the central directory entry
+            if (length != manifest.length || inflater.inflate(new byte[1]) > 0) {
+                throw new FallbackException("Size mismatch");
+            }
+            return manifest;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid " + MANIFEST + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] readWithJarFile(File jar) throws IOException {
+        JarFile file = new JarFile(jar, false);
+        try {
+            ZipEntry entry = file.getEntry(MANIFEST);
+            if (entry == null) {
+                return null;
+            }
+            InputStream is = file.getInputStream(entry);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = is.read(buffer)) >= 0) {
+                os.write(buffer, 0, count);
+            }
+            return os.toByteArray();
+        } finally {
+            file.close();
+        }
+    }
+
+    /*
+     * Thrown when an archive has to be read by JarFile instead
+     */
+    private static class FallbackException extends Exception {
+        FallbackException(String message) {
+            super(message);
+        }
+    }
+
+}
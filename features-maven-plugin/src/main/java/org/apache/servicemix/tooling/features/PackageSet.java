@@ -0,0 +1,161 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+/**
+ * A set of package names, which can also hold wildcard entries like <code>javax.*</code>
+ * covering all the packages below a package (but not the package itself).
+ * 
+ * The names are kept in a trie of package name segments, with a small hash table in every
+ * node, so that a lookup takes time proportional to the length of the name and doesn't
+ * allocate anything.
+ */
+public class PackageSet {
+
+    private static final String WILDCARD = "*";
+
+    private final Node root = new Node();
+
+    /**
+     * Add a package name, or a wildcard entry ending in <code>.*</code>
+     */
+    public void add(String entry) {
+        String name = entry.trim();
+        if (name.length() == 0) {
+            return;
+        }
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = name.indexOf('.', start);
+            if (end < 0) {
+                end = name.length();
+            }
+            String segment = name.substring(start, end);
+            if (end == name.length()) {
+                if (WILDCARD.equals(segment)) {
+                    node.wildcard = true;
+                } else {
+                    node.add(segment).exact = true;
+                }
+                return;
+            }
+            node = node.add(segment);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Add a list of package names and wildcard entries, separated by <code>;</code>
+     */
+    public void addAll(String entries) {
+        for (String entry : entries.split(";")) {
+            add(entry);
+        }
+    }
+
+    public boolean contains(String name) {
+        Node node = root;
+        int start = 0;
+        while (true) {
+            if (node.wildcard) {
+                return true;
+            }
+            int end = name.indexOf('.', start);
+            if (end < 0) {
+                end = name.length();
+            }
+            node = node.get(name, start, end);
+            if (node == null) {
+                return false;
+            }
+            if (end == name.length()) {
+                return node.exact;
+            }
+            start = end + 1;
+        }
+    }
+
+    /*
+     * A package name segment, with its child segments in an open addressing hash table
+     */
+    private static class Node {
+
+        private String[] segments = new String[4];
+        private Node[] children = new Node[4];
+        private int size;
+        private boolean exact;
+        private boolean wildcard;
+
+        private Node get(String name, int start, int end) {
+            int length = end - start;
+            int mask = segments.length - 1;
+            for (int i = hash(name, start, end) & mask; segments[i] != null; i = (i + 1) & mask) {
+                String segment = segments[i];
+                if (segment.length() == length && name.regionMatches(start, segment, 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node add(String segment) {
+            Node child = get(segment, 0, segment.length());
+            if (child == null) {
+                if ((size + 1) * 2 > segments.length) {
+                    resize();
+                }
+                child = new Node();
+                put(segment, child);
+                size++;
+            }
+            return child;
+        }
+
+        private void put(String segment, Node child) {
+            int mask = segments.length - 1;
+            int i = hash(segment, 0, segment.length()) & mask;
+            while (segments[i] != null) {
+                i = (i + 1) & mask;
+            }
+            segments[i] = segment;
+            children[i] = child;
+        }
+
+        private void resize() {
+            String[] oldSegments = segments;
+            Node[] oldChildren = children;
+            segments = new String[oldSegments.length * 2];
+            children = new Node[oldChildren.length * 2];
+            for (int i = 0; i < oldSegments.length; i++) {
+                if (oldSegments[i] != null) {
+                    put(oldSegments[i], oldChildren[i]);
+                }
+            }
+        }
+
+        private static int hash(String name, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + name.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
+}
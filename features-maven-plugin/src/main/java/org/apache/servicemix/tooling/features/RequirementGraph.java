@@ -0,0 +1,149 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * The graph of requirements between bundles.
+ * 
+ * The closure of a bundle, i.e. the bundle and everything it requires directly or
+ * indirectly, is computed once for every strongly connected component of the graph
+ * and shared by all the bundles in it, until the requirements of one of those
+ * bundles change.
+ */
+public class RequirementGraph<T> {
+
+    private final Map<T, List<T>> requirements = new HashMap<T, List<T>>();
+    private final Map<T, Set<T>> closures = new HashMap<T, Set<T>>();
+
+    /**
+     * Check if the requirements of a node are known
+     */
+    public boolean contains(T node) {
+        return requirements.containsKey(node);
+    }
+
+    /**
+     * Set the direct requirements of a node, dropping every cached closure that contains the node
+     */
+    public void setRequirements(T node, List<T> required) {
+        requirements.put(node, new ArrayList<T>(required));
+        for (Iterator<Set<T>> it = closures.values().iterator(); it.hasNext();) {
+            if (it.next().contains(node)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the direct requirements of a node; a node with unknown requirements requires nothing
+     */
+    public List<T> getRequirements(T node) {
+        List<T> required = requirements.get(node);
+        if (required == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(required);
+    }
+
+    /**
+     * Get the closure of a node.  Every node in it comes after the nodes it requires,
+     * except for the nodes that require each other, which come in the order they were found.
+     * 
+     * @return the node and all the nodes it requires directly or indirectly
+     */
+    public Set<T> getClosure(T node) {
+        if (!closures.containsKey(node)) {
+            new Components().visit(node);
+        }
+        return Collections.unmodifiableSet(closures.get(node));
+    }
+
+    /*
+     * Tarjan's algorithm, computing the closure of every strongly connected component 
+     * once all the components it requires are done
+     */
+    private class Components {
+
+        private final Map<T, Integer> index = new HashMap<T, Integer>();
+        private final Stack<T> stack = new Stack<T>();
+        private final Set<T> onStack = new HashSet<T>();
+
+        /*
+         * @return the lowest index reachable from the node
+         */
+        private int visit(T node) {
+            int current = index.size();
+            int low = current;
+            index.put(node, current);
+            stack.push(node);
+            onStack.add(node);
+            for (T required : getRequirements(node)) {
+                if (closures.containsKey(required)) {
+                    // the component of this node is done already
+                    continue;
+                }
+                Integer other = index.get(required);
+                if (other == null) {
+                    low = Math.min(low, visit(required));
+                } else if (onStack.contains(required)) {
+                    low = Math.min(low, other);
+                }
+            }
+            if (low == current) {
+                addComponent(node);
+            }
+            return low;
+        }
+
+        private void addComponent(T root) {
+            List<T> members = new ArrayList<T>();
+            T member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                members.add(member);
+            } while (!member.equals(root));
+            Collections.reverse(members);
+            Set<T> memberSet = new HashSet<T>(members);
+            Set<T> closure = new LinkedHashSet<T>();
+            for (T node : members) {
+                for (T required : getRequirements(node)) {
+                    if (!memberSet.contains(required)) {
+                        closure.addAll(closures.get(required));
+                    }
+                }
+            }
+            closure.addAll(members);
+            for (T node : members) {
+                closures.put(node, closure);
+            }
+        }
+    }
+
+}
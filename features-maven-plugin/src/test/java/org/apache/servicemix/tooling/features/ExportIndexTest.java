@@ -0,0 +1,75 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.Version;
+
+/**
+ * Test cases for {@link ExportIndex}
+ */
+public class ExportIndexTest extends TestCase {
+
+    private ExportIndex<String> index;
+
+    @Override
+    protected void setUp() throws Exception {
+        index = new ExportIndex<String>();
+        index.add("org.apache.foo", new Version("1.0.0"), "foo-1.0");
+        index.add("org.apache.foo", new Version("1.5.0"), "foo-1.5");
+        index.add("org.apache.foo", new Version("2.0.0"), "foo-2.0");
+        index.add("org.apache.foo", new Version("3.1.0"), "foo-3.1");
+    }
+
+    public void testHighestWithinRange() {
+        assertEquals("foo-1.5", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("[1,2)")));
+        assertEquals("foo-2.0", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("[1,2]")));
+        assertEquals("foo-2.0", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("(1.5,3)")));
+        assertEquals("foo-1.0", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("[1.0,1.0]")));
+    }
+
+    public void testNoMatchWithinRange() {
+        assertNull(index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("(1.5,2)")));
+        assertNull(index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("[0.5,1.0)")));
+        assertNull(index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("4.0")));
+        assertNull(index.getBestExporter("org.apache.bar", ExportIndex.Range.ANY));
+        assertEquals("foo-3.1", index.getHighestExporter("org.apache.foo"));
+        assertNull(index.getHighestExporter("org.apache.bar"));
+    }
+
+    public void testOpenRange() {
+        assertEquals("foo-3.1", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("1.5")));
+        assertEquals("foo-3.1", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse(null)));
+        assertEquals("foo-3.1", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("")));
+    }
+
+    public void testLaterExporterReplacesEarlier() {
+        index.add("org.apache.foo", new Version("1.5"), "other-1.5");
+        assertEquals("other-1.5", index.getBestExporter("org.apache.foo", ExportIndex.Range.parse("[1,2)")));
+    }
+
+    public void testLenientVersions() {
+        assertEquals(new Version("1.2.0"), ExportIndex.toVersion("1.2-SNAPSHOT"));
+        assertEquals(new Version("1.0.0"), ExportIndex.toVersion(" 1 "));
+        assertEquals(Version.emptyVersion, ExportIndex.toVersion("unknown"));
+        assertEquals(Version.emptyVersion, ExportIndex.toVersion(null));
+        assertEquals("[1.0.0,2.0.0)", ExportIndex.Range.parse("[1, 2)").toString());
+    }
+
+}
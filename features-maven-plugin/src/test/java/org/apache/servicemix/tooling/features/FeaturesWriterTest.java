@@ -0,0 +1,116 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Test cases for {@link FeaturesWriter}
+ */
+public class FeaturesWriterTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("feature", ".xml");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        new File(file.getPath() + ".gz").delete();
+    }
+
+    public void testWriteEscapedDescriptor() throws Exception {
+        FeaturesWriter writer = new FeaturesWriter(file, false);
+        writer.startFeature("a&b", "1.0");
+        writer.writeFeature("other's", null);
+        writer.writeBundle("org.apache.servicemix", "test<bundle>", "1.0");
+        writer.endFeature();
+        writer.close();
+        assertNull(writer.getGzipFile());
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        Element feature = (Element) document.getDocumentElement().getElementsByTagName("feature").item(0);
+        assertEquals("a&b", feature.getAttribute("name"));
+        assertEquals("1.0", feature.getAttribute("version"));
+        assertEquals("other's", feature.getElementsByTagName("feature").item(0).getTextContent());
+        assertEquals("mvn:org.apache.servicemix/test<bundle>/1.0",
+                     feature.getElementsByTagName("bundle").item(0).getTextContent());
+    }
+
+    public void testWriteGzippedCopy() throws Exception {
+        FeaturesWriter writer = new FeaturesWriter(file, true);
+        for (int i = 0; i < 1000; i++) {
+            writer.startFeature("feature" + i, null);
+            writer.writeBundle("org.apache.servicemix", "bundle" + i, "1.0");
+            writer.endFeature();
+        }
+        writer.close();
+        writer.close();
+
+        assertEquals(new File(file.getPath() + ".gz"), writer.getGzipFile());
+        byte[] plain = read(new FileInputStream(file));
+        byte[] gunzipped = read(new GZIPInputStream(new FileInputStream(writer.getGzipFile())));
+        assertEquals(new String(plain, "UTF-8"), new String(gunzipped, "UTF-8"));
+        assertTrue(writer.getGzipFile().length() < file.length());
+    }
+
+    public void testWriteToStream() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        FeaturesWriter writer = new FeaturesWriter(bos);
+        writer.startFeature("test", null);
+        writer.writeBundle("org.apache.servicemix", "bundle", "1.0");
+        writer.endFeature();
+        writer.finish();
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals("mvn:org.apache.servicemix/bundle/1.0",
+                     document.getDocumentElement().getElementsByTagName("bundle").item(0).getTextContent());
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int c;
+            while ((c = is.read(buffer)) >= 0) {
+                bos.write(buffer, 0, c);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+}
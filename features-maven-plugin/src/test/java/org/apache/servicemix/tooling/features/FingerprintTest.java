@@ -0,0 +1,96 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link Fingerprint}
+ */
+public class FingerprintTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("fingerprint", ".properties");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testFileChanges() throws Exception {
+        write(file, "first");
+        file.setLastModified(1000000L);
+        String value = fingerprint(file);
+        assertEquals(value, fingerprint(file));
+
+        file.setLastModified(2000000L);
+        assertFalse(value.equals(fingerprint(file)));
+
+        write(file, "second");
+        file.setLastModified(1000000L);
+        assertFalse(value.equals(fingerprint(file)));
+    }
+
+    public void testContentAndValues() throws Exception {
+        Fingerprint first = new Fingerprint();
+        first.add("1.0");
+        first.addContent("bundles", new ByteArrayInputStream("a/b/1.0/jar".getBytes()));
+        Fingerprint second = new Fingerprint();
+        second.add("1.0");
+        second.addContent("bundles", new ByteArrayInputStream("a/b/1.1/jar".getBytes()));
+        Fingerprint third = new Fingerprint();
+        third.add("1.0");
+        third.addContent("bundles", (File) null);
+        assertFalse(first.getValue().equals(second.getValue()));
+        assertFalse(first.getValue().equals(third.getValue()));
+        assertEquals(40, first.getValue().length());
+    }
+
+    public void testStoreAndLoad() throws Exception {
+        file.delete();
+        assertNull(Fingerprint.load(file));
+        Fingerprint.store(file, "0123456789abcdef");
+        assertEquals("0123456789abcdef", Fingerprint.load(file));
+    }
+
+    private static String fingerprint(File file) {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(null);
+        fingerprint.addFile("file", file);
+        return fingerprint.getValue();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes());
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -16,7 +16,19 @@
  */
 package org.apache.servicemix.tooling.features;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 
@@ -28,11 +40,24 @@ import junit.framework.TestCase;
 public class GenerateFeaturesXmlMojoTest extends TestCase {
     
     private Mockery mockery;
+    private File directory;
     
     @Override
     protected void setUp() throws Exception {
         super.setUp();
         mockery = new Mockery();
+        directory = File.createTempFile("features", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        super.tearDown();
     }
     
     public void testToString() throws Exception {
@@ -45,4 +70,128 @@ public class GenerateFeaturesXmlMojoTest extends TestCase {
         assertEquals("org.apache.servicemix.test/test-artifact/1.2.3", GenerateFeaturesXmlMojo.toString(artifact));
     }
 
+    public void testSkipsGenerationWhileInputsAreUnchanged() throws Exception {
+        GenerateFeaturesXmlMojo mojo = createMojo();
+        String fingerprint = mojo.computeFingerprint();
+        assertNotNull(fingerprint);
+        assertFalse(mojo.isUpToDate(fingerprint));
+        Fingerprint.store(new File(directory, "fingerprint.properties"), fingerprint);
+        assertTrue(mojo.isUpToDate(mojo.computeFingerprint()));
+    }
+
+    public void testGeneratesWhenProvidedDependencyChanges() throws Exception {
+        GenerateFeaturesXmlMojo mojo = createMojo();
+        Fingerprint.store(new File(directory, "fingerprint.properties"), mojo.computeFingerprint());
+        write(new File(directory, "kernel.jar"), "a newer kernel bundle");
+        assertFalse(mojo.isUpToDate(mojo.computeFingerprint()));
+    }
+
+    public void testGeneratesWhenPomChanges() throws Exception {
+        GenerateFeaturesXmlMojo mojo = createMojo();
+        Fingerprint.store(new File(directory, "fingerprint.properties"), mojo.computeFingerprint());
+        write(new File(directory, "pom.xml"), "<project>another dependency</project>");
+        assertFalse(mojo.isUpToDate(mojo.computeFingerprint()));
+    }
+
+    public void testKernelSnapshotIsRebuiltWhenProvidedDependencyChanges() throws Exception {
+        GenerateFeaturesXmlMojo mojo = createMojo();
+        String fingerprint = mojo.computeKernelFingerprint(null);
+        assertNotNull(fingerprint);
+        File snapshotFile = new File(directory, "kernel.properties");
+        new KernelSnapshot(fingerprint).store(snapshotFile);
+        assertNotNull(KernelSnapshot.load(snapshotFile, mojo.computeKernelFingerprint(null)));
+
+        write(new File(directory, "kernel.jar"), "a newer kernel bundle");
+        assertNull(KernelSnapshot.load(snapshotFile, mojo.computeKernelFingerprint(null)));
+    }
+
+    public void testKernelSnapshotIsRebuiltWhenPomChanges() throws Exception {
+        GenerateFeaturesXmlMojo mojo = createMojo();
+        File snapshotFile = new File(directory, "kernel.properties");
+        new KernelSnapshot(mojo.computeKernelFingerprint(null)).store(snapshotFile);
+        write(new File(directory, "pom.xml"), "<project>another provided dependency</project>");
+        assertNull(KernelSnapshot.load(snapshotFile, mojo.computeKernelFingerprint(null)));
+    }
+
+    public void testKernelFingerprintOfUnresolvedBundles() throws Exception {
+        GenerateFeaturesXmlMojo mojo = createMojo();
+        final ArtifactRepository repository = mockery.mock(ArtifactRepository.class);
+        final Artifact provided = mockery.mock(Artifact.class);
+        mockery.checking(new Expectations() {{
+            allowing(repository).getBasedir(); will(returnValue(directory.getAbsolutePath()));
+            allowing(repository).pathOf(provided); will(returnValue("felix.jar"));
+            allowing(provided).getId(); will(returnValue("org.apache.felix:org.apache.felix.framework:jar:1.0"));
+            allowing(provided).getScope(); will(returnValue(Artifact.SCOPE_PROVIDED));
+            allowing(provided).getFile(); will(returnValue(null));
+        }});
+        mojo.localRepo = repository;
+        mojo.project.setDependencyArtifacts(Collections.singleton(provided));
+        // not downloaded yet
+        assertNull(mojo.computeKernelFingerprint(null));
+        write(new File(directory, "felix.jar"), "a framework bundle");
+        assertNotNull(mojo.computeKernelFingerprint(null));
+    }
+
+    public void testJreProfiles() throws Exception {
+        Properties properties = new Properties();
+        properties.load(getClass().getClassLoader().getResourceAsStream("config.properties"));
+        assertEquals("[jre-1.5, jre-1.6]", GenerateFeaturesXmlMojo.getJreProfiles(properties).toString());
+        PackageSet jre16 = new PackageSet();
+        jre16.addAll(properties.getProperty("jre-1.6"));
+        for (String pkg : properties.getProperty("jre-1.5").split(";")) {
+            assertTrue(pkg, jre16.contains(pkg.trim()));
+        }
+        assertTrue(jre16.contains("javax.xml.stream"));
+    }
+
+    /*
+     * Create a mojo for a project with a compile and a provided dependency, of which only
+     * the compile one is resolved, as the mojo requires dependency resolution for the runtime scope
+     */
+    private GenerateFeaturesXmlMojo createMojo() throws Exception {
+        Artifact compile = artifact("org.apache.servicemix:bundle:jar:1.0", Artifact.SCOPE_COMPILE, "bundle.jar");
+        Artifact provided = artifact("org.apache.servicemix.kernel:kernel:jar:1.0", Artifact.SCOPE_PROVIDED, "kernel.jar");
+        Set<Artifact> dependencies = new HashSet<Artifact>();
+        dependencies.add(compile);
+        dependencies.add(provided);
+        MavenProject project = new MavenProject(new Model());
+        project.setFile(write(new File(directory, "pom.xml"), "<project/>"));
+        project.setArtifacts(Collections.singleton(compile));
+        project.setDependencyArtifacts(dependencies);
+
+        GenerateFeaturesXmlMojo mojo = new GenerateFeaturesXmlMojo();
+        mojo.project = project;
+        set(mojo, "outputFile", write(new File(directory, "feature.xml"), "<features/>"));
+        set(mojo, "fingerprintFile", new File(directory, "fingerprint.properties"));
+        set(mojo, "jreProfile", "jre-1.5");
+        return mojo;
+    }
+
+    private Artifact artifact(final String id, final String scope, String fileName) throws IOException {
+        final Artifact artifact = mockery.mock(Artifact.class, id);
+        final File file = write(new File(directory, fileName), id);
+        mockery.checking(new Expectations() {{
+            allowing(artifact).getId(); will(returnValue(id));
+            allowing(artifact).getScope(); will(returnValue(scope));
+            allowing(artifact).getFile(); will(returnValue(file));
+        }});
+        return artifact;
+    }
+
+    private static File write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    private static void set(Object object, String name, Object value) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
 }
@@ -0,0 +1,81 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link KernelSnapshot}
+ */
+public class KernelSnapshotTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("kernel", ".properties");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testStoreAndLoad() throws Exception {
+        KernelSnapshot snapshot = new KernelSnapshot("abc");
+        KernelSnapshot.Bundle bundle = snapshot.addBundle("org.apache.felix", "org.apache.felix.framework", "1.2.0", "jar", null);
+        bundle.addExport("org.osgi.framework", "1.4.0");
+        bundle.addExport("org.osgi.service.packageadmin", null);
+        bundle.addExport("org.osgi.framework", "1.3.0");
+        snapshot.addBundle("org.apache.servicemix", "shell", "1.0", "jar", "osgi");
+        snapshot.store(file);
+
+        KernelSnapshot loaded = KernelSnapshot.load(file, "abc");
+        assertNotNull(loaded);
+        assertEquals(2, loaded.getBundles().size());
+        KernelSnapshot.Bundle first = loaded.getBundles().get(0);
+        assertEquals("org.apache.felix", first.getGroupId());
+        assertEquals("org.apache.felix.framework", first.getArtifactId());
+        assertEquals("1.2.0", first.getVersion());
+        assertEquals("jar", first.getType());
+        assertNull(first.getClassifier());
+        List<String[]> exports = first.getExports();
+        assertEquals(3, exports.size());
+        assertEquals("org.osgi.framework", exports.get(0)[0]);
+        assertEquals("1.4.0", exports.get(0)[1]);
+        assertEquals("org.osgi.service.packageadmin", exports.get(1)[0]);
+        assertNull(exports.get(1)[1]);
+        assertEquals("1.3.0", exports.get(2)[1]);
+        KernelSnapshot.Bundle second = loaded.getBundles().get(1);
+        assertEquals("osgi", second.getClassifier());
+        assertTrue(second.getExports().isEmpty());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    public void testOtherFingerprint() throws Exception {
+        assertNull(KernelSnapshot.load(file, "abc"));
+        new KernelSnapshot("abc").store(file);
+        assertNotNull(KernelSnapshot.load(file, "abc"));
+        assertNull(KernelSnapshot.load(file, "def"));
+    }
+
+}
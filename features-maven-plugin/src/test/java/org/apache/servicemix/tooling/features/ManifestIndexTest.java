@@ -0,0 +1,123 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link ManifestIndex}
+ */
+public class ManifestIndexTest extends TestCase {
+
+    private File jar;
+    private File index;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        jar = File.createTempFile("bundle", ".jar");
+        index = File.createTempFile("manifest-index", ".properties");
+        index.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        jar.delete();
+        index.delete();
+        super.tearDown();
+    }
+
+    public void testReadHeaders() throws Exception {
+        writeBundle(jar, "org.apache.servicemix.test");
+        Map<String, String> headers = ManifestIndex.readHeaders(jar);
+        assertEquals("org.apache.servicemix.test", headers.get("Bundle-SymbolicName"));
+        assertEquals("org.apache.servicemix.test;version=\"1.0\"", headers.get("Export-Package"));
+        assertEquals("javax.xml.stream,org.osgi.framework;version=\"[1.4,2)\"", headers.get("Import-Package"));
+        assertFalse(headers.containsKey("Created-By"));
+    }
+
+    public void testUnchangedJarIsNotOpenedAgain() throws Exception {
+        writeBundle(jar, "org.apache.servicemix.test");
+        ManifestIndex manifests = new ManifestIndex(index);
+        manifests.load();
+        Map<String, String> headers = manifests.getHeaders("test:bundle:jar:1.0", jar);
+        manifests.store();
+
+        // garble the jar without changing its length or modification time
+        long lastModified = jar.lastModified();
+        RandomAccessFile file = new RandomAccessFile(jar, "rw");
+        try {
+            file.write(new byte[(int) file.length()]);
+        } finally {
+            file.close();
+        }
+        jar.setLastModified(lastModified);
+
+        manifests = new ManifestIndex(index);
+        manifests.load();
+        assertEquals(headers, manifests.getHeaders("test:bundle:jar:1.0", jar));
+        assertEquals(1, manifests.getHits());
+        assertEquals(0, manifests.getMisses());
+    }
+
+    public void testChangedJarIsOpenedAgain() throws Exception {
+        writeBundle(jar, "org.apache.servicemix.test");
+        ManifestIndex manifests = new ManifestIndex(index);
+        manifests.getHeaders("test:bundle:jar:1.0", jar);
+        writeBundle(jar, "org.apache.servicemix.other");
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertEquals("org.apache.servicemix.other", manifests.getHeaders("test:bundle:jar:1.0", jar).get("Bundle-SymbolicName"));
+        assertEquals(2, manifests.getMisses());
+    }
+
+    public void testJarWithoutManifest() throws Exception {
+        new JarOutputStream(new FileOutputStream(jar)).close();
+        ManifestIndex manifests = new ManifestIndex(index);
+        assertNull(manifests.getHeaders("test:plain:jar:1.0", jar));
+        assertNull(manifests.getHeaders("test:plain:jar:1.0", jar));
+        assertEquals(1, manifests.getHits());
+    }
+
+    public void testToManifest() throws Exception {
+        writeBundle(jar, "org.apache.servicemix.test");
+        Map<String, String> headers = ManifestIndex.readHeaders(jar);
+        Manifest manifest = new Manifest(ManifestIndex.toManifest(headers));
+        assertEquals(headers.get("Import-Package"), manifest.getMainAttributes().getValue("Import-Package"));
+    }
+
+    private static void writeBundle(File file, String bsn) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Created-By", "ManifestIndexTest");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", bsn);
+        attributes.putValue("Export-Package", bsn + ";version=\"1.0\"");
+        attributes.putValue("Import-Package", "javax.xml.stream,org.osgi.framework;version=\"[1.4,2)\"");
+        new JarOutputStream(new FileOutputStream(file), manifest).close();
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link ManifestReader}
+ */
+public class ManifestReaderTest extends TestCase {
+
+    private File jar;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        jar = File.createTempFile("bundle", ".jar");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        jar.delete();
+        super.tearDown();
+    }
+
+    public void testDeflatedManifest() throws Exception {
+        byte[] manifest = manifest("org.apache.servicemix.test");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(jar));
+        os.putNextEntry(new ZipEntry("org/"));
+        os.closeEntry();
+        os.putNextEntry(new ZipEntry(ManifestReader.MANIFEST));
+        os.write(manifest);
+        os.closeEntry();
+        os.setComment("a zip file comment");
+        os.close();
+        assertTrue(Arrays.equals(manifest, ManifestReader.read(jar)));
+    }
+
+    public void testStoredManifest() throws Exception {
+        byte[] manifest = manifest("org.apache.servicemix.test");
+        ZipOutputStream os = new ZipOutputStream(new FileOutputStream(jar));
+        ZipEntry entry = new ZipEntry("meta-inf/manifest.mf");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(manifest.length);
+        CRC32 crc = new CRC32();
+        crc.update(manifest);
+        entry.setCrc(crc.getValue());
+        os.putNextEntry(entry);
+        os.write(manifest);
+        os.closeEntry();
+        os.close();
+        assertTrue(Arrays.equals(manifest, ManifestReader.read(jar)));
+    }
+
+    public void testPrefixedArchive() throws Exception {
+        byte[] manifest = manifest("org.apache.servicemix.test");
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        new JarOutputStream(zip, new Manifest(new ByteArrayInputStream(manifest))).close();
+        OutputStream os = new FileOutputStream(jar);
+        os.write("#!/bin/sh\nexec java -jar $0\n".getBytes());
+        os.write(zip.toByteArray());
+        os.close();
+        assertEquals("org.apache.servicemix.test", new Manifest(new ByteArrayInputStream(ManifestReader.read(jar)))
+            .getMainAttributes().getValue("Bundle-SymbolicName"));
+    }
+
+    public void testNoManifest() throws Exception {
+        ZipOutputStream os = new ZipOutputStream(new FileOutputStream(jar));
+        os.putNextEntry(new ZipEntry("readme.txt"));
+        os.write("no manifest here".getBytes());
+        os.closeEntry();
+        os.close();
+        assertNull(ManifestReader.read(jar));
+    }
+
+    public void testNotAZipFile() throws Exception {
+        OutputStream os = new FileOutputStream(jar);
+        os.write(new byte[100]);
+        os.close();
+        try {
+            ManifestReader.read(jar);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testWrongUncompressedSize() throws Exception {
+        byte[] manifest = manifest("org.apache.servicemix.test");
+        new JarOutputStream(new FileOutputStream(jar), new Manifest(new ByteArrayInputStream(manifest))).close();
+        // record a larger uncompressed size in the central directory
+        RandomAccessFile file = new RandomAccessFile(jar, "rw");
+        try {
+            byte[] content = new byte[(int) file.length()];
+            file.readFully(content);
+            int position = indexOf(content, new byte[] {0x50, 0x4b, 0x01, 0x02});
+            file.seek(position + 24);
+            int size = manifest.length + 100;
+            file.write(new byte[] {(byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)});
+        } finally {
+            file.close();
+        }
+        // read through JarFile instead of being padded to the recorded size
+        assertTrue(Arrays.equals(manifest, ManifestReader.read(jar)));
+    }
+
+    private static int indexOf(byte[] content, byte[] signature) {
+        for (int i = 0; i + signature.length <= content.length; i++) {
+            int j = 0;
+            while (j < signature.length && content[i + j] == signature[j]) {
+                j++;
+            }
+            if (j == signature.length) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Signature not found");
+    }
+
+    public void testMemoization() throws Exception {
+        byte[] manifest = manifest("org.apache.servicemix.test");
+        new JarOutputStream(new FileOutputStream(jar), new Manifest(new ByteArrayInputStream(manifest))).close();
+        ManifestReader reader = new ManifestReader();
+        byte[] first = reader.getManifest(jar);
+        assertSame(first, reader.getManifest(jar));
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertNotSame(first, reader.getManifest(jar));
+    }
+
+    private static byte[] manifest(String bsn) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-SymbolicName", bsn);
+        attributes.putValue("Import-Package", "javax.xml.stream,org.osgi.framework;version=\"[1.4,2)\"");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        manifest.write(os);
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link PackageSet}
+ */
+public class PackageSetTest extends TestCase {
+
+    public void testExactNames() {
+        PackageSet set = new PackageSet();
+        set.addAll("javax.xml.parsers; org.w3c.dom;;org.osgi.framework;");
+        assertTrue(set.contains("javax.xml.parsers"));
+        assertTrue(set.contains("org.w3c.dom"));
+        assertTrue(set.contains("org.osgi.framework"));
+        assertFalse(set.contains("javax.xml"));
+        assertFalse(set.contains("javax.xml.parsers.impl"));
+        assertFalse(set.contains("org.w3c.domx"));
+        assertFalse(set.contains("org"));
+        assertFalse(set.contains(""));
+    }
+
+    public void testWildcards() {
+        PackageSet set = new PackageSet();
+        set.add("javax.*");
+        set.add("com.sun.xml.*");
+        assertTrue(set.contains("javax.swing"));
+        assertTrue(set.contains("javax.xml.stream.events"));
+        assertTrue(set.contains("com.sun.xml.bind"));
+        assertFalse(set.contains("javax"));
+        assertFalse(set.contains("com.sun.xml"));
+        assertFalse(set.contains("com.sun.net"));
+
+        set.add("*");
+        assertTrue(set.contains("org.apache.servicemix"));
+    }
+
+    public void testManySegments() {
+        PackageSet set = new PackageSet();
+        for (int i = 0; i < 1000; i++) {
+            set.add("org.apache.test" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.contains("org.apache.test" + i));
+        }
+        assertFalse(set.contains("org.apache.test1000"));
+    }
+
+    public void testProfiles() throws Exception {
+        Properties properties = new Properties();
+        properties.load(getClass().getClassLoader().getResourceAsStream("config.properties"));
+        PackageSet set = new PackageSet();
+        set.addAll(properties.getProperty("jre-1.5"));
+        for (String pkg : properties.getProperty("jre-1.5").split(";")) {
+            assertTrue(pkg, set.contains(pkg.trim()));
+        }
+        assertFalse(set.contains("org.osgi.framework"));
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.tooling.features;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link RequirementGraph}
+ */
+public class RequirementGraphTest extends TestCase {
+
+    private RequirementGraph<String> graph;
+
+    @Override
+    protected void setUp() throws Exception {
+        graph = new RequirementGraph<String>();
+    }
+
+    public void testRequiredNodesComeFirst() {
+        graph.setRequirements("feature", Arrays.asList("a", "b"));
+        graph.setRequirements("a", Arrays.asList("c"));
+        graph.setRequirements("b", Arrays.asList("c", "d"));
+        assertEquals(Arrays.asList("c", "a", "d", "b", "feature"), closure("feature"));
+        assertEquals(Arrays.asList("c", "a"), closure("a"));
+        assertEquals(Arrays.asList("d"), closure("d"));
+    }
+
+    public void testCycleSharesClosure() {
+        graph.setRequirements("feature", Arrays.asList("a"));
+        graph.setRequirements("a", Arrays.asList("b", "c"));
+        graph.setRequirements("b", Arrays.asList("a"));
+        graph.setRequirements("c", Arrays.asList("c"));
+        assertEquals(Arrays.asList("c", "a", "b", "feature"), closure("feature"));
+        assertEquals(closure("a"), closure("b"));
+        assertEquals(Arrays.asList("c", "a", "b"), closure("b"));
+    }
+
+    public void testClosureInvalidatedWhenRequirementsChange() {
+        graph.setRequirements("feature", Arrays.asList("a"));
+        graph.setRequirements("a", Arrays.asList("b"));
+        graph.setRequirements("other", Arrays.asList("c"));
+        assertEquals(Arrays.asList("b", "a", "feature"), closure("feature"));
+        assertEquals(Arrays.asList("c", "other"), closure("other"));
+        graph.setRequirements("a", Collections.<String>emptyList());
+        assertEquals(Arrays.asList("a", "feature"), closure("feature"));
+        assertEquals(Arrays.asList("c", "other"), closure("other"));
+    }
+
+    public void testUnknownNode() {
+        assertFalse(graph.contains("a"));
+        assertTrue(graph.getRequirements("a").isEmpty());
+        assertEquals(Arrays.asList("a"), closure("a"));
+    }
+
+    private List<String> closure(String node) {
+        return new ArrayList<String>(graph.getClosure(node));
+    }
+
+}